@@ -0,0 +1,92 @@
+package org.hibernate.query.validator;
+
+/**
+ * Warms up the validation engine on a thread of its own, while
+ * the compiler goes on scanning the classes of the round, and
+ * while the session factory is created, so that the first query
+ * doesn't have to wait for Hibernate to boot and for the {@link
+ * ParserWarmup parser to warm up}. Only things which
+ * don't depend on the compiler are done here: the {@linkplain
+ * MockSessionFactory.Bootstrap bootstrap}, along with the classes
+ * it loads, and the parser warm-up. If the compiler thread gets to
+ * either first, it just waits for it to be finished.
+ */
+final class BackgroundWarmup implements Runnable {
+
+    private final Thread thread;
+    private long bootstrapNanos;
+    private long parserNanos;
+    private boolean awaited;
+    private long waitNanos;
+
+    private BackgroundWarmup() {
+        thread = new Thread(this, "Hibernate Query Validator warm-up");
+        thread.setDaemon(true);
+    }
+
+    static BackgroundWarmup start() {
+        BackgroundWarmup warmup = new BackgroundWarmup();
+        warmup.thread.start();
+        return warmup;
+    }
+
+    @Override
+    public void run() {
+        try {
+            long start = System.nanoTime();
+            MockSessionFactory.Bootstrap.instance();
+            bootstrapNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            ParserWarmup.warmUp();
+            parserNanos = System.nanoTime() - start;
+        }
+        catch (Throwable e) {
+            //the compiler thread will fail
+            //the same way, and report it
+        }
+    }
+
+    /**
+     * Wait for the warm-up to finish, before the first query is
+     * parsed, measuring how long the compiler thread waited.
+     */
+    void await() {
+        if (!awaited) {
+            awaited = true;
+            long start = System.nanoTime();
+            join();
+            waitNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void join() {
+        //the compiler may have been interrupted, but
+        //the warm-up is short, so wait for it anyway
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A description of the time taken by the warm-up, and of how
+     * much of it the compiler thread didn't have to wait for.
+     */
+    String describe() {
+        join();
+        long totalNanos = bootstrapNanos + parserNanos;
+        return "background warm-up took " + ParserWarmup.millis(totalNanos) + " ms (bootstrap "
+                + ParserWarmup.millis(bootstrapNanos) + " ms, parser " + ParserWarmup.millis(parserNanos)
+                + " ms), of which " + ParserWarmup.millis(Math.max(0, totalNanos - waitNanos))
+                + " ms overlapped other work";
+    }
+}
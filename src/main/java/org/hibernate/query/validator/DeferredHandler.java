@@ -0,0 +1,112 @@
+package org.hibernate.query.validator;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.dfa.DFA;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Holds on to the diagnostics produced by validating a query,
+ * so that they may be reported later, on the compiler thread,
+ * and in the order the queries occur in the source code.
+ */
+class DeferredHandler implements Validation.Handler {
+
+    /**
+     * An error or warning, as passed to {@link #error} or
+     * {@link #warn}.
+     */
+    static final class Diagnostic {
+        final boolean error;
+        final int start;
+        final int end;
+        final String message;
+
+        Diagnostic(boolean error, int start, int end, String message) {
+            this.error = error;
+            this.start = start;
+            this.end = end;
+            this.message = message;
+        }
+    }
+
+    private final Validation.Handler delegate;
+    private final List<Consumer<Validation.Handler>> events = new ArrayList<>();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private boolean syntaxError;
+    private int errorCount;
+
+    DeferredHandler(Validation.Handler delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * The errors and warnings, not including syntax errors.
+     */
+    List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    boolean hasSyntaxError() {
+        return syntaxError;
+    }
+
+    /**
+     * Pass everything on to the real handler.
+     */
+    void report() {
+        for (Consumer<Validation.Handler> event: events) {
+            event.accept(delegate);
+        }
+        events.clear();
+    }
+
+    @Override
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public void error(int start, int end, String message) {
+        errorCount++;
+        diagnostics.add(new Diagnostic(true, start, end, message));
+        events.add(handler -> handler.error(start, end, message));
+    }
+
+    @Override
+    public void warn(int start, int end, String message) {
+        diagnostics.add(new Diagnostic(false, start, end, message));
+        events.add(handler -> handler.warn(start, end, message));
+    }
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                            int line, int charPositionInLine,
+                            String message, RecognitionException e) {
+        errorCount++;
+        syntaxError = true;
+        events.add(handler -> handler.syntaxError(recognizer, offendingSymbol,
+                line, charPositionInLine, message, e));
+    }
+
+    @Override
+    public void reportAmbiguity(Parser parser, DFA dfa, int i, int i1, boolean b,
+                                BitSet bitSet, ATNConfigSet atnConfigSet) {
+    }
+
+    @Override
+    public void reportAttemptingFullContext(Parser parser, DFA dfa, int i, int i1,
+                                            BitSet bitSet, ATNConfigSet atnConfigSet) {
+    }
+
+    @Override
+    public void reportContextSensitivity(Parser parser, DFA dfa, int i, int i1, int i2,
+                                         ATNConfigSet atnConfigSet) {
+    }
+}
@@ -12,7 +12,6 @@ import org.eclipse.jdt.internal.compiler.ast.StringLiteral;
 import org.eclipse.jdt.internal.compiler.ast.ThisReference;
 import org.eclipse.jdt.internal.compiler.lookup.BlockScope;
 
-import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.TypeElement;
 import java.util.HashSet;
 import java.util.Set;
@@ -22,7 +21,6 @@ import static org.eclipse.jdt.core.compiler.CharOperation.charToString;
 import static org.hibernate.query.validator.ECJSessionFactory.qualifiedName;
 import static org.hibernate.query.validator.HQLProcessor.hibernate;
 import static org.hibernate.query.validator.HQLProcessor.jpa;
-import static org.hibernate.query.validator.Validation.validate;
 
 /**
  * @author Gavin King
@@ -34,14 +32,14 @@ class ECJASTVisitor extends ASTVisitor {
     private final TypeElement panacheEntity;
     private final CompilationUnitDeclaration unit;
     private final Compiler compiler;
-    private final ProcessingEnvironment processingEnv;
+    private final ECJProcessor processor;
     boolean immediatelyCalled;
 
-    public ECJASTVisitor(TypeElement panacheEntity, CompilationUnitDeclaration unit, Compiler compiler, ProcessingEnvironment processingEnv) {
+    public ECJASTVisitor(TypeElement panacheEntity, CompilationUnitDeclaration unit, Compiler compiler, ECJProcessor processor) {
         this.panacheEntity = panacheEntity;
         this.unit = unit;
         this.compiler = compiler;
-        this.processingEnv = processingEnv;
+        this.processor = processor;
         setParameterLabels = new HashSet<>();
         setParameterNames = new HashSet<>();
         setOrderBy = new HashSet<>();
@@ -145,27 +143,30 @@ class ECJASTVisitor extends ASTVisitor {
 
     void check(StringLiteral stringLiteral, boolean inCreateQueryMethod) {
         String hql = charToString(stringLiteral.source());
-        ECJErrorReporter handler = new ECJErrorReporter(stringLiteral, unit, compiler, hql);
-        validate(hql, inCreateQueryMethod && immediatelyCalled,
-                setParameterLabels, setParameterNames, handler,
+        DeferredHandler handler = new DeferredHandler(
+                new ECJErrorReporter(stringLiteral, unit, compiler, hql));
+        processor.validate(handler, hql, inCreateQueryMethod && immediatelyCalled,
+                setParameterLabels, setParameterNames, unit, 0);
 //                ProcessorSessionFactory.instance.make(processingEnv));
-                ECJProcessor.sessionFactory.make(unit));
     }
 
     void checkPanacheQuery(StringLiteral stringLiteral, String targetType, String methodName,
                            String panacheQl, Expression[] args) {
-        ECJErrorReporter handler = new ECJErrorReporter(stringLiteral, unit, compiler, panacheQl);
+        DeferredHandler handler = new DeferredHandler(
+                new ECJErrorReporter(stringLiteral, unit, compiler, panacheQl));
         collectPanacheArguments(args);
         int[] offset = new int[1];
         String hql = PanacheUtils.panacheQlToHql(handler, targetType, methodName,
                 panacheQl, offset, setParameterLabels, setOrderBy);
         if (hql != null) {
-            validate(hql, true,
-                    setParameterLabels, setParameterNames, handler,
+            processor.validate(handler, hql, true,
+                    setParameterLabels, setParameterNames, unit,
 //                    ProcessorSessionFactory.instance.make(processingEnv),
-                    ECJProcessor.sessionFactory.make(unit),
                     offset[0]);
         }
+        else {
+            processor.report(handler);
+        }
     }
 
     private void collectPanacheArguments(Expression[] args) {
@@ -4,6 +4,7 @@ import static org.hibernate.query.validator.ECJSessionFactory.getAnnotation;
 import static org.hibernate.query.validator.ECJSessionFactory.qualifiedName;
 import static org.hibernate.query.validator.HQLProcessor.CHECK_HQL;
 
+import java.util.HashSet;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
@@ -18,7 +19,6 @@ import org.eclipse.jdt.internal.compiler.Compiler;
 import org.eclipse.jdt.internal.compiler.apt.dispatch.BaseProcessingEnvImpl;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
-import org.eclipse.jdt.internal.compiler.lookup.AnnotationBinding;
 import org.eclipse.jdt.internal.compiler.lookup.Binding;
 import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
 
@@ -33,40 +33,119 @@ import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
 //@SupportedAnnotationTypes(CHECK_HQL)
 public class ECJProcessor extends AbstractProcessor {
 
-    static Mocker<ECJSessionFactory> sessionFactory = Mocker.variadic(ECJSessionFactory.class);
+    private ECJSessionFactory sessionFactory;
+    private ValidationQueue validationQueue;
+
+    // names of the files of compilation units already
+    // checked in an earlier round
+    private final Set<String> processedUnits = new HashSet<>();
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Hibernate Query Validator for ECJ");
+        validationQueue = new ValidationQueue(processingEnv);
+    }
+
+    /**
+     * The session factory shared by every query checked during
+     * this compilation, created when the first query is validated,
+     * and discarded when processing is over.
+     */
+    ECJSessionFactory getSessionFactory(CompilationUnitDeclaration unit) {
+        if (sessionFactory == null) {
+            sessionFactory = ECJSessionFactory.instance.make(unit);
+        }
+        else {
+            sessionFactory.setCompilationUnit(unit);
+        }
+        return sessionFactory;
+    }
+
+    /**
+     * Validate the given query at the end of this round.
+     */
+    void validate(DeferredHandler handler, String hql, boolean checkParams,
+                  Set<Integer> setParameterLabels,
+                  Set<String> setParameterNames,
+                  CompilationUnitDeclaration unit,
+                  int errorOffset) {
+        validationQueue.add(handler, hql, checkParams,
+                setParameterLabels, setParameterNames,
+                () -> getSessionFactory(unit), errorOffset);
+    }
+
+    void report(DeferredHandler handler) {
+        validationQueue.add(handler);
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        Compiler compiler = ((BaseProcessingEnvImpl) processingEnv).getCompiler();
+        Compiler compiler = ((BaseProcessingEnvImpl) HQLProcessor.unwrap(processingEnv)).getCompiler();
         if (!roundEnv.getRootElements().isEmpty()) {
+            if (sessionFactory != null) {
+                sessionFactory.newRound();
+            }
             for (CompilationUnitDeclaration unit : compiler.unitsToProcess) {
-                compiler.parser.getMethodBodies(unit);
-                checkHQL(unit, compiler);
+                //the array may be longer than the number of units
+                if (unit != null
+                        && processedUnits.add(new String(unit.getFileName()))
+                        && isCheckable(unit)) {
+                    //only now parse the method bodies
+                    compiler.parser.getMethodBodies(unit);
+                    checkHQL(unit, compiler);
+                }
             }
+            validationQueue.validate(null);
+        }
+        if (roundEnv.processingOver()) {
+            validationQueue.close(sessionFactory);
+            sessionFactory = null;
+            processedUnits.clear();
         }
         return true;
     }
 
     private void checkHQL(CompilationUnitDeclaration unit, Compiler compiler) {
+        boolean packageCheckable = isPackageCheckable(unit);
         for (TypeDeclaration type : unit.types) {
-            if (isCheckable(type.binding, unit)) {
+            if (packageCheckable || isCheckable(type.binding)) {
 //                List<String> whitelist = getWhitelist(type.binding, unit, compiler);
                 Elements elements = processingEnv.getElementUtils();
                 TypeElement typeElement = elements.getTypeElement(qualifiedName(type.binding));
                 TypeElement panacheEntity = PanacheUtils.isPanache(typeElement, processingEnv.getTypeUtils(), elements);
-                type.traverse(new ECJASTVisitor(panacheEntity, unit, compiler, processingEnv), unit.scope);
+                type.traverse(new ECJASTVisitor(panacheEntity, unit, compiler, this), unit.scope);
+            }
+        }
+    }
+
+    /**
+     * Could the given compilation unit contain queries to check?
+     * Determined without looking at method bodies, so that the
+     * method bodies of other units needn't be parsed.
+     */
+    private static boolean isCheckable(CompilationUnitDeclaration unit) {
+        if (unit.types == null) {
+            return false;
+        }
+        if (isPackageCheckable(unit)) {
+            return true;
+        }
+        for (TypeDeclaration type : unit.types) {
+            if (isCheckable(type.binding)) {
+                return true;
             }
         }
+        return false;
     }
 
-    private static boolean isCheckable(TypeBinding type, CompilationUnitDeclaration unit) {
-        return getCheckAnnotation(type, unit)!=null;
+    private static boolean isCheckable(TypeBinding type) {
+        return getAnnotation(type, CHECK_HQL)!=null;
+    }
+
+    private static boolean isPackageCheckable(CompilationUnitDeclaration unit) {
+        Binding packInfo = unit.scope.getType("package-info".toCharArray());
+        return getAnnotation(packInfo, CHECK_HQL)!=null;
     }
 //
 //    private static List<String> getWhitelist(TypeBinding type,
@@ -98,14 +177,6 @@ public class ECJProcessor extends AbstractProcessor {
 //        return names;
 //    }
 
-    private static AnnotationBinding getCheckAnnotation(TypeBinding type,
-                                                        CompilationUnitDeclaration unit) {
-        AnnotationBinding result = getAnnotation(type, CHECK_HQL);
-        if (result!=null) return result;
-        Binding packInfo = unit.scope.getType("package-info".toCharArray());
-        return getAnnotation(packInfo, CHECK_HQL);
-    }
-
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
@@ -13,7 +13,10 @@ import org.hibernate.type.internal.BasicTypeImpl;
 import jakarta.persistence.AccessType;
 import java.beans.Introspector;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Arrays.stream;
 import static org.eclipse.jdt.core.compiler.CharOperation.charToString;
@@ -25,17 +28,48 @@ import static org.hibernate.query.validator.HQLProcessor.jpa;
  */
 public abstract class ECJSessionFactory extends MockSessionFactory {
 
+    static final Mocker<ECJSessionFactory> instance = Mocker.variadic(ECJSessionFactory.class);
     private static final Mocker<EntityPersister> entityPersister = Mocker.variadic(EntityPersister.class);
     private static final Mocker<ToManyAssociationPersister> toManyPersister = Mocker.variadic(ToManyAssociationPersister.class);
     private static final Mocker<ElementCollectionPersister> collectionPersister = Mocker.variadic(ElementCollectionPersister.class);
     private static final Mocker<Component> component = Mocker.variadic(Component.class);
 
-    private final CompilationUnitDeclaration unit;
+    private CompilationUnitDeclaration unit;
+
+    // the types of members, and of embeddables by access type,
+    // when they don't depend on the entity they belong to
+    private final Map<Binding,Type> memberTypes = new HashMap<>();
+    private final Map<AccessType,Map<TypeBinding,Type>> componentTypes = new EnumMap<>(AccessType.class);
 
     public ECJSessionFactory(CompilationUnitDeclaration unit) {
         this.unit = unit;
     }
 
+    /**
+     * Called at the start of each processing round, since the
+     * round might have introduced new entities.
+     */
+    void newRound() {
+        clearInterpretations();
+        clearDomainTypes();
+        memberTypes.clear();
+        componentTypes.clear();
+    }
+
+    /**
+     * The factory is shared by all compilation units, but
+     * names are resolved in the scope of the unit currently
+     * being checked.
+     */
+    void setCompilationUnit(CompilationUnitDeclaration unit) {
+        this.unit = unit;
+    }
+
+    @Override
+    Object getInterpretationScope() {
+        return unit;
+    }
+
     @Override
     MockEntityPersister createMockEntityPersister(String entityName) {
         TypeBinding type = findEntityClass(entityName);
@@ -86,16 +120,20 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                         (last, current) -> current);
     }
 
-    static Type propertyType(Binding member,
-                             String entityName, String path,
-                             AccessType defaultAccessType) {
+    Type propertyType(Binding member,
+                      String entityName, String path,
+                      AccessType defaultAccessType) {
+        Type type = memberTypes.get(member);
+        if (type != null) {
+            return type;
+        }
         TypeBinding memberType = getMemberType(member);
         if (isEmbeddedProperty(member)) {
-            return component.make(memberType, entityName, path, defaultAccessType);
+            return component(memberType, entityName, path, defaultAccessType);
         }
         else if (isToOneAssociation(member)) {
             String targetEntity = getToOneTargetEntity(member);
-            return new ManyToOneType(typeConfiguration, targetEntity);
+            type = new ManyToOneType(typeConfiguration, targetEntity);
         }
         else if (isToManyAssociation(member)) {
             return collectionType(memberType, qualify(entityName, path));
@@ -104,19 +142,38 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
             return collectionType(memberType, qualify(entityName,path));
         }
         else if (isEnumProperty(member)) {
-            return new BasicTypeImpl(new EnumJavaType(Object.class), IntegerJdbcType.INSTANCE);
+            type = new BasicTypeImpl(new EnumJavaType(Object.class), IntegerJdbcType.INSTANCE);
         }
         else {
-            Type result = typeConfiguration.getBasicTypeRegistry().getRegisteredType(qualifiedName(memberType));
-            return result;// == null ? unknownType : result;
+            type = typeConfiguration.getBasicTypeRegistry().getRegisteredType(qualifiedName(memberType));
+        }
+        if (type != null) {
+            //doesn't depend on the entity or path
+            memberTypes.put(member, type);
+        }
+        return type;
+    }
+
+    private Type component(TypeBinding type,
+                           String entityName, String path,
+                           AccessType defaultAccessType) {
+        Map<TypeBinding,Type> components = componentTypes.get(defaultAccessType);
+        if (components != null && components.containsKey(type)) {
+            return components.get(type);
+        }
+        Type result = component.make(type, entityName, path, defaultAccessType, this);
+        if (!dependsOnRole(result)) {
+            componentTypes.computeIfAbsent(defaultAccessType, accessType -> new HashMap<>())
+                    .put(type, result);
         }
+        return result;
     }
 
-    private static Type elementCollectionElementType(TypeBinding elementType,
-                                                     String role, String path,
-                                                     AccessType defaultAccessType) {
+    private Type elementCollectionElementType(TypeBinding elementType,
+                                              String role, String path,
+                                              AccessType defaultAccessType) {
         if (isEmbeddableType(elementType)) {
-            return component.make(elementType, role, path, defaultAccessType);
+            return component(elementType, role, path, defaultAccessType);
         }
         else {
             return typeConfiguration.getBasicTypeRegistry().getRegisteredType(qualifiedName(elementType));
@@ -136,7 +193,8 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
 
         public Component(TypeBinding type,
                   String entityName, String path,
-                  AccessType defaultAccessType) {
+                  AccessType defaultAccessType,
+                  ECJSessionFactory factory) {
             this.type = type;
 
             List<String> names = new ArrayList<>();
@@ -152,7 +210,7 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                         if (isPersistable(member, accessType)) {
                             String name = propertyName(member);
                             Type propertyType =
-                                    propertyType(member, entityName,
+                                    factory.propertyType(member, entityName,
                                             qualify(path, name),
                                             defaultAccessType);
                             if (propertyType != null) {
@@ -165,7 +223,7 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                         if (isPersistable(member, accessType)) {
                             String name = propertyName(member);
                             Type propertyType =
-                                    propertyType(member, entityName,
+                                    factory.propertyType(member, entityName,
                                             qualify(path, name),
                                             defaultAccessType);
                             if (propertyType != null) {
@@ -228,12 +286,13 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
 
     public static abstract class EntityPersister extends MockEntityPersister {
         private final TypeBinding type;
+        private final ECJSessionFactory sessionFactory;
 
         public EntityPersister(String entityName, TypeBinding type,
                                ECJSessionFactory that) {
             super(entityName, getDefaultAccessType(type), that);
             this.type = type;
-            initSubclassPersisters();
+            this.sessionFactory = that;
         }
 
         @Override
@@ -248,7 +307,7 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                     findPropertyByPath(type, propertyPath,
                             defaultAccessType);
             return symbol == null ? null :
-                    propertyType(symbol, getEntityName(),
+                    sessionFactory.propertyType(symbol, getEntityName(),
                             propertyPath, defaultAccessType);
         }
 
@@ -260,7 +319,7 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                                           String targetEntityName,
                                           ECJSessionFactory that) {
             super(role, collectionType,
-                    new ManyToOneType(typeConfiguration, targetEntityName),
+                    new ManyToOneType(that.getTypeConfiguration(), targetEntityName),
                     that);
         }
 
@@ -273,6 +332,7 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
     public abstract static class ElementCollectionPersister extends MockCollectionPersister {
         private final TypeBinding elementType;
         private final AccessType defaultAccessType;
+        private final ECJSessionFactory sessionFactory;
 
         public ElementCollectionPersister(String role,
                                           CollectionType collectionType,
@@ -281,11 +341,12 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                                           AccessType defaultAccessType,
                                           ECJSessionFactory that) {
             super(role, collectionType,
-                    elementCollectionElementType(elementType, role,
+                    that.elementCollectionElementType(elementType, role,
                             propertyPath, defaultAccessType),
                     that);
             this.elementType = elementType;
             this.defaultAccessType = defaultAccessType;
+            this.sessionFactory = that;
         }
 
         @Override
@@ -294,7 +355,7 @@ public abstract class ECJSessionFactory extends MockSessionFactory {
                     findPropertyByPath(elementType, propertyPath,
                             defaultAccessType);
             return symbol == null ? null :
-                    propertyType(symbol, getOwnerEntityName(),
+                    sessionFactory.propertyType(symbol, getOwnerEntityName(),
                             propertyPath, defaultAccessType);
         }
     }
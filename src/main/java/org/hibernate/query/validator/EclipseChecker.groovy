@@ -17,11 +17,13 @@ class EclipseChecker {
     private def compiler
 //        private List<String> whitelist
     private def processingEnv
+    private EclipseProcessor processor
 
-    EclipseChecker(unit, compiler, processingEnv) {
+    EclipseChecker(unit, compiler, processingEnv, EclipseProcessor processor) {
         this.compiler = compiler
         this.unit = unit
         this.processingEnv = processingEnv
+        this.processor = processor
     }
 
     void checkHQL() {
@@ -236,7 +238,7 @@ class EclipseChecker {
         EclipseErrorReporter handler = new EclipseErrorReporter(arg, unit, compiler, hql)
         Validation.validate(hql, inCreateQueryMethod && immediatelyCalled,
                 setParameterLabels, setParameterNames, handler,
-                EclipseProcessor.sessionFactory.make(unit))
+                processor.getSessionFactory(unit))
     }
 
     void checkPanacheQuery(stringLiteral, targetType, methodName, panacheQl, args) {
@@ -248,7 +250,7 @@ class EclipseChecker {
         if (hql != null) {
             Validation.validate(hql, true,
                      setParameterLabels, setParameterNames, handler,
-                    EclipseProcessor.sessionFactory.make(unit), offset[0])
+                    processor.getSessionFactory(unit), offset[0])
         }
     }
 
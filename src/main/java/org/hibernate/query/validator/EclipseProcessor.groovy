@@ -28,17 +28,37 @@ class EclipseProcessor extends AbstractProcessor {
         processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Hibernate Query Validator for Eclipse");
     }
 
-    static Mocker<EclipseSessionFactory> sessionFactory = Mocker.variadic(EclipseSessionFactory.class)
+    private EclipseSessionFactory sessionFactory
+
+    /**
+     * The session factory shared by every query checked in
+     * this round. The IDE starts a new round for every build,
+     * so it's discarded at the end of the round.
+     */
+    EclipseSessionFactory getSessionFactory(unit) {
+        if (sessionFactory == null) {
+            sessionFactory = EclipseSessionFactory.instance.make(unit)
+        }
+        else {
+            sessionFactory.unit = unit
+        }
+        return sessionFactory
+    }
 
     @Override
     boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         def compiler = processingEnv.getCompiler()
-        if (!roundEnv.getRootElements().isEmpty()) {
-            for (unit in compiler.unitsToProcess) {
-                compiler.parser.getMethodBodies(unit)
-                new EclipseChecker(unit, compiler, processingEnv).checkHQL()
+        try {
+            if (!roundEnv.getRootElements().isEmpty()) {
+                for (unit in compiler.unitsToProcess) {
+                    compiler.parser.getMethodBodies(unit)
+                    new EclipseChecker(unit, compiler, processingEnv, this).checkHQL()
+                }
             }
         }
+        finally {
+            sessionFactory = null
+        }
         return false
     }
 
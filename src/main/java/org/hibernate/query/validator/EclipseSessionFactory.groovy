@@ -19,17 +19,25 @@ import static org.hibernate.query.validator.HQLProcessor.jpa
  */
 abstract class EclipseSessionFactory extends MockSessionFactory {
 
+    static final Mocker<EclipseSessionFactory> instance = Mocker.variadic(EclipseSessionFactory.class)
     private static final Mocker<EntityPersister> entityPersister = Mocker.variadic(EntityPersister.class)
     private static final Mocker<ToManyAssociationPersister> toManyPersister = Mocker.variadic(ToManyAssociationPersister.class)
     private static final Mocker<ElementCollectionPersister> collectionPersister = Mocker.variadic(ElementCollectionPersister.class)
     private static final Mocker<Component> component = Mocker.variadic(Component.class)
 
-    final def unit
+    //names are resolved in the scope of the unit
+    //currently being checked
+    def unit
 
     EclipseSessionFactory(unit) {
         this.unit = unit
     }
 
+    @Override
+    Object getInterpretationScope() {
+        return unit
+    }
+
     @Override
     MockEntityPersister createMockEntityPersister(String entityName) {
         def type = findEntityClass(entityName)
@@ -84,12 +92,12 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
         }
     }
 
-    static Type propertyType(member,
-                             String entityName, String path,
-                             AccessType defaultAccessType) {
+    Type propertyType(member,
+                      String entityName, String path,
+                      AccessType defaultAccessType) {
         def memberType = getMemberType(member)
         if (isEmbeddedProperty(member)) {
-            return component.make(memberType, entityName, path, defaultAccessType)
+            return component.make(memberType, entityName, path, defaultAccessType, this)
         }
         else if (isToOneAssociation(member)) {
             String targetEntity = getToOneTargetEntity(member)
@@ -110,11 +118,11 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
         }
     }
 
-    private static Type elementCollectionElementType(elementType,
-                                                     String role, String path,
-                                                     AccessType defaultAccessType) {
+    private Type elementCollectionElementType(elementType,
+                                              String role, String path,
+                                              AccessType defaultAccessType) {
         if (isEmbeddableType(elementType)) {
-            return component.make(elementType, role, path, defaultAccessType);
+            return component.make(elementType, role, path, defaultAccessType, this);
         }
         else {
             return typeConfiguration.getBasicTypeRegistry().getRegisteredType(qualifiedTypeName(elementType))
@@ -131,7 +139,8 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
         def type
 
         Component(type, String entityName, String path,
-                  AccessType defaultAccessType) {
+                  AccessType defaultAccessType,
+                  EclipseSessionFactory factory) {
             this.type = type
 
             List<String> names = []
@@ -146,7 +155,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
                         if (isPersistable(member, accessType)) {
                             String name = propertyName(member)
                             Type propertyType =
-                                    propertyType(member, entityName,
+                                    factory.propertyType(member, entityName,
                                             qualify(path, name),
                                             defaultAccessType)
                             if (propertyType != null) {
@@ -159,7 +168,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
                         if (isPersistable(member, accessType)) {
                             String name = propertyName(member)
                             Type propertyType =
-                                    propertyType(member, entityName,
+                                    factory.propertyType(member, entityName,
                                             qualify(path, name),
                                             defaultAccessType)
                             if (propertyType != null) {
@@ -222,12 +231,13 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
 
     static abstract class EntityPersister extends MockEntityPersister {
         private final def typeDeclaration
+        private final EclipseSessionFactory sessionFactory
 
         EntityPersister(String entityName, type, EclipseSessionFactory that,
                         AccessType defaultAccessType) {
             super(entityName, defaultAccessType, that)
             this.typeDeclaration = type
-            initSubclassPersisters()
+            this.sessionFactory = that
         }
 
         @Override
@@ -243,7 +253,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
                     findPropertyByPath(typeDeclaration, propertyPath,
                             defaultAccessType)
             return symbol == null ? null :
-                    propertyType(symbol, getEntityName(),
+                    sessionFactory.propertyType(symbol, getEntityName(),
                             propertyPath, defaultAccessType)
         }
 
@@ -255,7 +265,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
                                    String targetEntityName,
                                    EclipseSessionFactory that) {
             super(role, collectionType,
-                    new ManyToOneType(typeConfiguration, targetEntityName),
+                    new ManyToOneType(that.getTypeConfiguration(), targetEntityName),
                     that)
         }
 
@@ -268,6 +278,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
     static abstract class ElementCollectionPersister extends MockCollectionPersister {
         private final def elementType
         private final AccessType defaultAccessType
+        private final EclipseSessionFactory sessionFactory
 
         ElementCollectionPersister(String role,
                                    CollectionType collectionType,
@@ -279,6 +290,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
             super(role, collectionType, elementCollectionType, that)
             this.elementType = elementType
             this.defaultAccessType = defaultAccessType
+            this.sessionFactory = that
         }
 
         @Override
@@ -287,7 +299,7 @@ abstract class EclipseSessionFactory extends MockSessionFactory {
                     findPropertyByPath(elementType, propertyPath,
                             defaultAccessType)
             return symbol == null ? null :
-                    propertyType(symbol, getOwnerEntityName(),
+                    sessionFactory.propertyType(symbol, getOwnerEntityName(),
                             propertyPath, defaultAccessType)
         }
     }
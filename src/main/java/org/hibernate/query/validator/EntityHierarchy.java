@@ -0,0 +1,157 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.type.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * An index of the inheritance relationships between the entities
+ * which have a {@link MockEntityPersister}. It's updated as each
+ * persister is created, so that polymorphic lookups don't need to
+ * scan every persister.
+ * <p>
+ * An entity may be known by both its entity name and its class
+ * name, in which case there are two persisters for the same class,
+ * each of which is a subtype of the other.
+ */
+final class EntityHierarchy {
+
+    private final List<MockEntityPersister> persisters = new ArrayList<>();
+
+    // for each entity name, the persisters of its subtypes
+    // and supertypes, not including its own persister
+    private final Map<String, Set<MockEntityPersister>> subtypes = new HashMap<>();
+    private final Map<String, Set<MockEntityPersister>> supertypes = new HashMap<>();
+
+    // derived from the above, and discarded whenever a
+    // persister is added
+    private final Map<String, String> rootEntityNames = new HashMap<>();
+    private final Map<String, Map<String, Type>> subtypeAttributeTypes = new HashMap<>();
+
+    /**
+     * Add a newly created persister to the index, comparing it
+     * with each of the existing persisters.
+     */
+    void add(MockEntityPersister persister) {
+        Set<MockEntityPersister> newSubtypes = new LinkedHashSet<>();
+        Set<MockEntityPersister> newSupertypes = new LinkedHashSet<>();
+        for (MockEntityPersister other: persisters) {
+            if (persister.isSubclassPersister(other)) {
+                newSubtypes.add(other);
+                supertypes.get(other.getEntityName()).add(persister);
+            }
+            if (other.isSubclassPersister(persister)) {
+                newSupertypes.add(other);
+                subtypes.get(other.getEntityName()).add(persister);
+            }
+        }
+        persisters.add(persister);
+        subtypes.put(persister.getEntityName(), newSubtypes);
+        supertypes.put(persister.getEntityName(), newSupertypes);
+        rootEntityNames.clear();
+        subtypeAttributeTypes.clear();
+    }
+
+    /**
+     * @return the persisters of the subtypes of the given entity
+     */
+    Set<MockEntityPersister> getSubtypes(String entityName) {
+        return subtypes.getOrDefault(entityName, emptySet());
+    }
+
+    private Set<MockEntityPersister> getSupertypes(String entityName) {
+        return supertypes.getOrDefault(entityName, emptySet());
+    }
+
+    /**
+     * Is the second entity the same as, or a subtype of, the first?
+     */
+    boolean isSubtype(String entityName, String subtypeEntityName) {
+        if (entityName.equals(subtypeEntityName)) {
+            return true;
+        }
+        for (MockEntityPersister subtype: getSubtypes(entityName)) {
+            if (subtype.getEntityName().equals(subtypeEntityName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The name of the root entity of the hierarchy. If the root
+     * entity is known by both its entity name and its class name,
+     * the entity name is preferred, to be consistent.
+     */
+    String getRootEntityName(String entityName) {
+        String rootEntityName = rootEntityNames.get(entityName);
+        if (rootEntityName == null) {
+            rootEntityName = preferEntityName(findRoot(entityName));
+            rootEntityNames.put(entityName, rootEntityName);
+        }
+        return rootEntityName;
+    }
+
+    private String findRoot(String entityName) {
+        for (MockEntityPersister supertype: getSupertypes(entityName)) {
+            if (getSubtypes(entityName).contains(supertype)) {
+                continue; //just another name for the same entity
+            }
+            String name = supertype.getEntityName();
+            if (!hasProperSupertype(name)) {
+                return name;
+            }
+        }
+        return entityName;
+    }
+
+    private boolean hasProperSupertype(String entityName) {
+        for (MockEntityPersister supertype: getSupertypes(entityName)) {
+            if (!getSubtypes(entityName).contains(supertype)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String preferEntityName(String entityName) {
+        for (MockEntityPersister supertype: getSupertypes(entityName)) {
+            if (getSubtypes(entityName).contains(supertype)
+                    && supertype.getEntityName().indexOf('.') < 0) {
+                return supertype.getEntityName();
+            }
+        }
+        return entityName;
+    }
+
+    /**
+     * The type of an attribute declared by some subtype of the
+     * given entity, which is needed for {@code treat()}.
+     */
+    Type getSubtypeAttributeType(String entityName, String attributeName) {
+        Map<String, Type> types =
+                subtypeAttributeTypes.computeIfAbsent(attributeName, name -> new HashMap<>());
+        if (types.containsKey(entityName)) {
+            return types.get(entityName);
+        }
+        //remember the miss now, since the other name for
+        //the entity is one of its subtypes
+        types.put(entityName, null);
+        //copy, since looking up the attribute may create persisters
+        for (MockEntityPersister subtype: new ArrayList<>(getSubtypes(entityName))) {
+            Type result = subtype.getPropertyType(attributeName);
+            if (result != null) {
+                types.put(entityName, result);
+                return result;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,358 @@
+package org.hibernate.query.validator;
+
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static javax.tools.StandardLocation.CLASS_PATH;
+
+/**
+ * A compact binary description of the entities and embeddables
+ * of a module, written to the output of the module which owns
+ * the entities, so that compilations of other modules can
+ * validate queries without deriving the model from compiler
+ * symbols all over again.
+ */
+class EntityModel {
+
+    static final String RESOURCE = "META-INF/hibernate-query-validator/entities.bin";
+
+    private static final int MAGIC = 0x48515632; //HQV2
+
+    enum Kind {
+        BASIC, ENUM, TO_ONE, TO_MANY, ELEMENT_COLLECTION, EMBEDDED
+    }
+
+    /**
+     * A persistent attribute. For a basic attribute, or an
+     * embedded attribute, the {@code type} is the qualified
+     * name of its Java type. For an association it's the
+     * entity name of the target entity. For an element
+     * collection it's the qualified name of the element type.
+     * For an enum it's {@code STRING} or {@code ORDINAL}.
+     */
+    static final class Attribute {
+        final String name;
+        final Kind kind;
+        final String type;
+        final String collection;
+
+        Attribute(String name, Kind kind, String type, String collection) {
+            this.name = name;
+            this.kind = kind;
+            this.type = type;
+            this.collection = collection;
+        }
+    }
+
+    /**
+     * An entity or embeddable, with its inherited attributes.
+     */
+    static final class ManagedType {
+        final String className;
+        final String simpleName;
+        final String entityName; //null for an embeddable
+        final String superclassName; //simple name of the direct superclass
+        final List<String> supertypes; //qualified names, including this class
+        final Map<String,Attribute> attributes = new LinkedHashMap<>();
+
+        ManagedType(String className, String simpleName, String entityName,
+                    String superclassName, List<String> supertypes) {
+            this.className = className;
+            this.simpleName = simpleName;
+            this.entityName = entityName;
+            this.superclassName = superclassName;
+            this.supertypes = supertypes;
+        }
+
+        boolean isEntity() {
+            return entityName != null;
+        }
+
+        void add(Attribute attribute) {
+            attributes.putIfAbsent(attribute.name, attribute);
+        }
+    }
+
+    private final Map<String,ManagedType> typesByClassName = new LinkedHashMap<>();
+    private final Map<String,ManagedType> entitiesByName = new HashMap<>();
+
+    boolean isEmpty() {
+        return typesByClassName.isEmpty();
+    }
+
+    boolean contains(String className) {
+        return typesByClassName.containsKey(className);
+    }
+
+    void add(ManagedType type) {
+        if (typesByClassName.putIfAbsent(type.className, type) == null
+                && type.isEntity()) {
+            entitiesByName.putIfAbsent(type.entityName, type);
+        }
+    }
+
+    /**
+     * @param name an entity name or the qualified name of an
+     *             entity class
+     */
+    ManagedType getEntity(String name) {
+        if (name == null) {
+            return null;
+        }
+        ManagedType entity = entitiesByName.get(name);
+        if (entity == null) {
+            ManagedType type = typesByClassName.get(name);
+            return type != null && type.isEntity() ? type : null;
+        }
+        return entity;
+    }
+
+    /**
+     * @param className the qualified name of an entity class
+     *                  or embeddable class
+     */
+    ManagedType getType(String className) {
+        return className == null ? null : typesByClassName.get(className);
+    }
+
+    /**
+     * Resolve a path of attributes, for example, {@code address.city},
+     * following embedded attributes and associations.
+     */
+    Attribute getAttribute(ManagedType type, String path) {
+        Attribute attribute = null;
+        int start = 0;
+        while (type != null) {
+            int end = path.indexOf('.', start);
+            attribute = type.attributes.get(end < 0 ? path.substring(start) : path.substring(start, end));
+            if (attribute == null || end < 0) {
+                return attribute;
+            }
+            type = getTargetType(attribute);
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * The entity or embeddable an attribute refers to, if any.
+     */
+    ManagedType getTargetType(Attribute attribute) {
+        switch (attribute.kind) {
+            case EMBEDDED:
+            case ELEMENT_COLLECTION:
+                return getType(attribute.type);
+            case TO_ONE:
+            case TO_MANY:
+                return getEntity(attribute.type);
+            default:
+                return null;
+        }
+    }
+
+    void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(typesByClassName.size());
+        for (ManagedType type: typesByClassName.values()) {
+            write(out, type);
+        }
+        out.flush();
+    }
+
+    private static void write(DataOutputStream out, ManagedType type) throws IOException {
+        writeString(out, type.className);
+        writeString(out, type.simpleName);
+        writeString(out, type.entityName);
+        writeString(out, type.superclassName);
+        out.writeInt(type.supertypes.size());
+        for (String supertype: type.supertypes) {
+            writeString(out, supertype);
+        }
+        out.writeInt(type.attributes.size());
+        for (Attribute attribute: type.attributes.values()) {
+            writeString(out, attribute.name);
+            out.writeByte(attribute.kind.ordinal());
+            writeString(out, attribute.type);
+            writeString(out, attribute.collection);
+        }
+    }
+
+    /**
+     * A hash of the given type, together with the embeddables
+     * it refers to, which changes whenever the type changes in
+     * any way which might affect the interpretation of a query.
+     */
+    long fingerprint(ManagedType type) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            Set<String> visited = new HashSet<>();
+            List<ManagedType> types = new ArrayList<>();
+            types.add(type);
+            while (!types.isEmpty()) {
+                ManagedType next = types.remove(types.size() - 1);
+                if (visited.add(next.className)) {
+                    write(out, next);
+                    for (Attribute attribute: next.attributes.values()) {
+                        if (attribute.kind == Kind.EMBEDDED
+                                || attribute.kind == Kind.ELEMENT_COLLECTION) {
+                            ManagedType embeddable = getType(attribute.type);
+                            if (embeddable != null) {
+                                types.add(embeddable);
+                            }
+                        }
+                    }
+                }
+            }
+            out.flush();
+            return hash(bytes.toByteArray());
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void read(ByteBuffer buffer) {
+        if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+            //not something we know how to read
+            return;
+        }
+        Kind[] kinds = Kind.values();
+        int typeCount = buffer.getInt();
+        for (int i = 0; i < typeCount; i++) {
+            String className = readString(buffer);
+            String simpleName = readString(buffer);
+            String entityName = readString(buffer);
+            String superclassName = readString(buffer);
+            int supertypeCount = buffer.getInt();
+            List<String> supertypes = new ArrayList<>(supertypeCount);
+            for (int j = 0; j < supertypeCount; j++) {
+                supertypes.add(readString(buffer));
+            }
+            ManagedType type = new ManagedType(className, simpleName, entityName,
+                    superclassName, supertypes);
+            int attributeCount = buffer.getInt();
+            for (int j = 0; j < attributeCount; j++) {
+                String name = readString(buffer);
+                Kind kind = kinds[buffer.get()];
+                type.add(new Attribute(name, kind, readString(buffer), readString(buffer)));
+            }
+            add(type);
+        }
+    }
+
+    static long hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return ByteBuffer.wrap(digest).getLong();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Read every model on the class path. A model in a
+     * directory is memory-mapped.
+     *
+     * @return the merged model, or null if there is none
+     */
+    static EntityModel load(JavaFileManager fileManager) {
+        EntityModel model = new EntityModel();
+        if (fileManager instanceof StandardJavaFileManager) {
+            Iterable<? extends File> classPath =
+                    ((StandardJavaFileManager) fileManager).getLocation(CLASS_PATH);
+            if (classPath != null) {
+                for (File entry: classPath) {
+                    try {
+                        ByteBuffer buffer = map(entry);
+                        if (buffer != null) {
+                            model.read(buffer);
+                        }
+                    }
+                    catch (IOException|RuntimeException e) {
+                        //corrupt, or written by some other version
+                    }
+                }
+            }
+        }
+        return model.isEmpty() ? null : model;
+    }
+
+    private static ByteBuffer map(File classPathEntry) throws IOException {
+        if (classPathEntry.isDirectory()) {
+            File file = new File(classPathEntry, RESOURCE);
+            if (file.isFile()) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+        }
+        else if (classPathEntry.isFile()) {
+            try (ZipFile jar = new ZipFile(classPathEntry)) {
+                ZipEntry entry = jar.getEntry(RESOURCE);
+                if (entry != null) {
+                    try (InputStream stream = jar.getInputStream(entry)) {
+                        return ByteBuffer.wrap(readAll(stream));
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        byte[] buffer = new byte[8192];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int read;
+        while ((read = stream.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
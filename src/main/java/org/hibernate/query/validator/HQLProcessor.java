@@ -4,22 +4,95 @@ import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
  * @author Gavin King
  */
 @SupportedAnnotationTypes("*")
+@SupportedOptions({HQLProcessor.JANDEX, HQLProcessor.EXPORT_MODEL, HQLProcessor.CACHE,
+        HQLProcessor.PARALLELISM, HQLProcessor.STATISTICS, HQLProcessor.SESSION_FACTORY,
+        HQLProcessor.PREWARM, HQLProcessor.INCREMENTAL})
 public class HQLProcessor extends AbstractProcessor {
 
     static final String CHECK_HQL = hibernate("processing.CheckHQL");
 
+    /**
+     * Processor option controlling whether entities are looked
+     * up in the Jandex indexes of jars on the class path: {@code
+     * true} (the default), {@code false}, or {@code only}, to
+     * never fall back to searching every package.
+     */
+    static final String JANDEX = "hibernate.query.validator.jandex";
+
+    /**
+     * Processor option which, if {@code true}, writes an
+     * {@link EntityModel} describing the entities being
+     * compiled, for use when compiling other modules.
+     */
+    static final String EXPORT_MODEL = "hibernate.query.validator.exportModel";
+
+    /**
+     * Processor option specifying a directory in which to keep
+     * a {@link ValidationCache} between builds.
+     */
+    static final String CACHE = "hibernate.query.validator.cache";
+
+    /**
+     * Processor option specifying the number of threads used to
+     * parse queries, by default, the parallelism of the common
+     * {@link java.util.concurrent.ForkJoinPool}.
+     */
+    static final String PARALLELISM = "hibernate.query.validator.parallelism";
+
+    /**
+     * Processor option which, if {@code true}, reports the time
+     * spent parsing the first queries of the build, while the
+     * parser is cold, and the rest.
+     */
+    static final String STATISTICS = "hibernate.query.validator.statistics";
+
+    /**
+     * Processor option selecting how {@code javac} is asked about
+     * entities: {@code processor}, through the portable language
+     * model, {@code javac}, directly through the compiler's symbol
+     * table, or {@code auto} (the default), to use the symbol table
+     * whenever nothing else requires the language model, since
+     * it's faster.
+     */
+    static final String SESSION_FACTORY = "hibernate.query.validator.sessionFactory";
+
+    /**
+     * Processor option which, if {@code true}, boots Hibernate
+     * and warms up the parser on a background thread as soon as
+     * the first class to be checked is seen, while the compiler
+     * is still busy with the rest of the round.
+     */
+    static final String PREWARM = "hibernate.query.validator.prewarm";
+
+    /**
+     * Processor option which, if {@code true}, tells Gradle that
+     * the processor is an aggregating incremental processor, so
+     * that only changed classes are recompiled. Then queries which
+     * refer to a changed entity aren't validated again, and so
+     * it's off by default.
+     */
+    static final String INCREMENTAL = "hibernate.query.validator.incremental";
+
+    // declared by a "dynamic" incremental processor
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
     static String jpa(String name) {
         //sneak it past shadow
         return new StringBuilder("jakarta.")
@@ -39,32 +112,121 @@ public class HQLProcessor extends AbstractProcessor {
     public static boolean forceEclipseForTesting = false;
 
     private AbstractProcessor delegate;
+    private boolean started;
 
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
     }
 
+    /**
+     * Nothing is done here, since we're called for every module
+     * with the processor on its path. The delegate, and with it
+     * Hibernate, is only loaded by {@link #start()}, when there's
+     * a class to check, or from the first round if the entity
+     * model is to be exported, since an entity module usually
+     * has nothing to check.
+     */
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
-        String compiler = processingEnv.getClass().getName();
+    }
+
+    /**
+     * Gradle asks this after {@link #init}, since the processor
+     * is registered as {@code dynamic}.
+     */
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = super.getSupportedOptions();
+        if (processingEnv != null
+                && "true".equals(processingEnv.getOptions().get(INCREMENTAL))) {
+            options = new HashSet<>(options);
+            options.add(GRADLE_AGGREGATING);
+        }
+        return options;
+    }
+
+    /**
+     * Create and initialize the delegate for the compiler we're
+     * running in, when the first class to be checked is seen.
+     */
+    private void start() {
+        started = true;
+        String compiler = unwrap(processingEnv).getClass().getName();
+        AbstractProcessor processor = null;
         if (compiler.endsWith("IdeBuildProcessingEnvImpl")
                 || forceEclipseForTesting) {
             //create it using reflection to allow
             //us to compile everything else w/o
             //the Groovy compiler being present
-            delegate = newEclipseProcessor();
+            processor = newEclipseProcessor();
         }
         else if (compiler.endsWith("BatchProcessingEnvImpl")) {
-            delegate = new ECJProcessor();
+            processor = new ECJProcessor();
         }
         else if (compiler.endsWith("JavacProcessingEnvironment")) {
-            delegate = new JavacProcessor();
+            processor = new JavacProcessor();
+        }
+        if (processor!=null) {
+            //if it fails, it's reported once, and
+            //there's no delegate for later rounds
+            processor.init(processingEnv);
+            delegate = processor;
         }
-        if (delegate!=null) {
-            delegate.init(processingEnv);
+    }
+
+    /**
+     * Is the given class, or its package, annotated
+     * {@code @CheckHQL}?
+     */
+    static boolean isCheckable(Element element) {
+        if (hasCheckAnnotation(element)) {
+            return true;
+        }
+        Element enclosing = element.getEnclosingElement();
+        return enclosing != null && hasCheckAnnotation(enclosing);
+    }
+
+    private static boolean hasCheckAnnotation(Element element) {
+        for (AnnotationMirror am: element.getAnnotationMirrors()) {
+            if (am.getAnnotationType().asElement().toString().equals(CHECK_HQL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean exportsModel() {
+        return "true".equals(processingEnv.getOptions().get(EXPORT_MODEL));
+    }
+
+    private static boolean containsCheckable(RoundEnvironment roundEnv) {
+        for (Element element: roundEnv.getRootElements()) {
+            if (isCheckable(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gradle wraps the {@link ProcessingEnvironment} passed to an
+     * incremental annotation processor, hiding the compiler's own
+     * implementation, which we need.
+     */
+    static ProcessingEnvironment unwrap(ProcessingEnvironment processingEnv) {
+        while (processingEnv.getClass().getName().startsWith("org.gradle.")) {
+            try {
+                Field delegate = processingEnv.getClass().getDeclaredField("delegate");
+                delegate.setAccessible(true);
+                processingEnv = (ProcessingEnvironment) delegate.get(processingEnv);
+            }
+            catch (Exception e) {
+                break;
+            }
         }
+        return processingEnv;
     }
 
     private static AbstractProcessor newEclipseProcessor() {
@@ -81,10 +243,16 @@ public class HQLProcessor extends AbstractProcessor {
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        if (delegate==null) {
+        if (!started && !exportsModel() && !containsCheckable(roundEnv)) {
             return false;
         }
         try {
+            if (!started) {
+                start();
+            }
+            if (delegate==null) {
+                return false;
+            }
 //            processingEnv.getMessager()
 //                    .printMessage(Diagnostic.Kind.MANDATORY_WARNING,
 //                            "CALLED " + roundEnv.getRootElements().size());
@@ -0,0 +1,101 @@
+package org.hibernate.query.validator;
+
+import org.jboss.jandex.AnnotationInstance;
+import org.jboss.jandex.AnnotationTarget;
+import org.jboss.jandex.AnnotationValue;
+import org.jboss.jandex.ClassInfo;
+import org.jboss.jandex.DotName;
+import org.jboss.jandex.IndexReader;
+import org.jboss.jandex.IndexView;
+
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static javax.tools.StandardLocation.CLASS_PATH;
+import static org.hibernate.query.validator.HQLProcessor.jpa;
+
+/**
+ * Finds entities in the Jandex indexes, {@code META-INF/jandex.idx},
+ * of the jars on the class path, without the need to ask the
+ * compiler for the contents of every package.
+ */
+class JandexEntityIndex {
+
+    private static final String JANDEX_INDEX = "META-INF/jandex.idx";
+
+    //only Jakarta Persistence entities are recognized
+    //by the session factory, so don't look for others
+    private static final DotName ENTITY = DotName.createSimple(jpa("Entity"));
+
+    /**
+     * @return a map from entity name to qualified class name
+     */
+    static Map<String,String> entityClassNames(JavaFileManager fileManager) {
+        Map<String,String> classNamesByEntityName = new HashMap<>();
+        //META-INF isn't a package, so we can't use list()
+        if (fileManager instanceof StandardJavaFileManager) {
+            Iterable<? extends File> classPath =
+                    ((StandardJavaFileManager) fileManager).getLocation(CLASS_PATH);
+            if (classPath != null) {
+                for (File entry: classPath) {
+                    IndexView index = read(entry);
+                    if (index != null) {
+                        addEntities(index, classNamesByEntityName);
+                    }
+                }
+            }
+        }
+        return classNamesByEntityName;
+    }
+
+    private static IndexView read(File classPathEntry) {
+        try {
+            if (classPathEntry.isDirectory()) {
+                File file = new File(classPathEntry, JANDEX_INDEX);
+                if (file.isFile()) {
+                    try (InputStream stream = new FileInputStream(file)) {
+                        return new IndexReader(stream).read();
+                    }
+                }
+            }
+            else if (classPathEntry.isFile()) {
+                try (ZipFile jar = new ZipFile(classPathEntry)) {
+                    ZipEntry entry = jar.getEntry(JANDEX_INDEX);
+                    if (entry != null) {
+                        try (InputStream stream = jar.getInputStream(entry)) {
+                            return new IndexReader(stream).read();
+                        }
+                    }
+                }
+            }
+        }
+        catch (IOException|RuntimeException e) {
+            //corrupt, or an unsupported version
+        }
+        return null;
+    }
+
+    private static void addEntities(IndexView index, Map<String,String> classNamesByEntityName) {
+        for (AnnotationInstance annotation: index.getAnnotations(ENTITY)) {
+            if (annotation.target().kind() == AnnotationTarget.Kind.CLASS
+                    && annotation.target().asClass().nestingType()
+                            == ClassInfo.NestingType.TOP_LEVEL) {
+                ClassInfo type = annotation.target().asClass();
+                AnnotationValue name = annotation.value("name");
+                //entity names are unqualified class names
+                String entityName = name==null || name.asString().isEmpty()
+                        ? type.simpleName()
+                        : name.asString();
+                classNamesByEntityName.putIfAbsent(entityName, type.name().toString());
+            }
+        }
+    }
+}
@@ -1,21 +1,26 @@
 package org.hibernate.query.validator;
 
+import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.model.JavacElements;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Options;
 
 import javax.annotation.processing.ProcessingEnvironment;
-import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.util.Elements;
-
-import static org.hibernate.query.validator.HQLProcessor.CHECK_HQL;
+import javax.tools.JavaFileObject;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Gavin King
  */
 public class JavacChecker {
 	private final JavacProcessor javacProcessor;
+	private final Map<JavaFileObject,Integer> mentionsBySourceFile = new HashMap<>();
+	private Charset sourceCharset;
 
 	public JavacChecker(JavacProcessor javacProcessor) {
 		this.javacProcessor = javacProcessor;
@@ -31,27 +36,54 @@ public class JavacChecker {
 
 	void checkHQL(Element element) {
 		Elements elementUtils = getProcessingEnv().getElementUtils();
-		if (isCheckable(element) || isCheckable(element.getEnclosingElement())) {
+		if (HQLProcessor.isCheckable(element)) {
 //			List<String> whitelist = getWhitelist(element);
-			JCTree tree = ((JavacElements) elementUtils).getTree(element);
 			TypeElement panacheEntity = PanacheUtils.isPanache(element, getProcessingEnv().getTypeUtils(), elementUtils);
-			if (tree != null) {
-				tree.accept(new JavacTreeScanner(this, element, panacheEntity));
+			if (mayContainQueries(element, panacheEntity != null)) {
+				JCTree tree = ((JavacElements) elementUtils).getTree(element);
+				if (tree != null) {
+					tree.accept(new JavacTreeScanner(this, element, panacheEntity));
+				}
 			}
 		}
 	}
 
-	private static boolean isCheckAnnotation(AnnotationMirror am) {
-		return am.getAnnotationType().asElement().toString().equals(CHECK_HQL);
+	/**
+	 * Does the source file of the given class mention any of
+	 * the names which {@link JavacTreeScanner} looks for? If
+	 * not, there's no need to walk its tree.
+	 */
+	private boolean mayContainQueries(Element element, boolean panache) {
+		if (!(element instanceof Symbol.ClassSymbol)) {
+			return true;
+		}
+		JavaFileObject file = ((Symbol.ClassSymbol) element).sourcefile;
+		if (file == null) {
+			return true;
+		}
+		//a file may declare several classes
+		int mentions = mentionsBySourceFile.computeIfAbsent(file,
+				f -> QueryMentions.mentions(QueryMentions.readSource(f, sourceCharset())));
+		return (mentions & QueryMentions.QUERIES) != 0
+			|| panache && (mentions & QueryMentions.PANACHE) != 0;
 	}
 
-	private static boolean isCheckable(Element element) {
-		for (AnnotationMirror am: element.getAnnotationMirrors()) {
-			if (isCheckAnnotation(am)) {
-				return true;
+	/**
+	 * The encoding of the source files, as specified to the
+	 * compiler by {@code -encoding}.
+	 */
+	private Charset sourceCharset() {
+		if (sourceCharset == null) {
+			String encoding = Options.instance(javacProcessor.getContext()).get("-encoding");
+			try {
+				sourceCharset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+			}
+			catch (IllegalArgumentException e) {
+				//the compiler has already complained
+				sourceCharset = Charset.defaultCharset();
 			}
 		}
-		return false;
+		return sourceCharset;
 	}
 
 //	private List<String> getWhitelist(Element element) {
@@ -28,20 +28,39 @@ class JavacErrorReporter implements Validation.Handler {
 
 	private static final String KEY = "proc.messager";
 
+	/**
+	 * The log and source file of a compilation unit, looked up
+	 * once, and shared by the reporters of all its queries.
+	 */
+	static final class Source {
+		private final Log log;
+		private final JavaFileObject sourcefile;
+
+		Source(JavacProcessor processor, Element element) {
+			Context context = processor.getContext();
+			log = Log.instance(context);
+			Pair<JCTree, JCTree.JCCompilationUnit> pair =
+					JavacElements.instance(context).getTreeAndTopLevel(element, null, null);
+			//reports may be deferred until the end of the round,
+			//so remember the source file until then
+			sourcefile = pair == null ? null : pair.snd.sourcefile;
+		}
+	}
+
 	private final Log log;
 	private final JCTree.JCLiteral literal;
 	private final String hql;
+	private final JavaFileObject sourcefile;
 	private int errorcount;
 
-	JavacErrorReporter(JavacProcessor processor, JCTree.JCLiteral literal, Element element, String hql) {
+	JavacErrorReporter(Source source, JCTree.JCLiteral literal, String hql) {
 		this.literal = literal;
 		this.hql = hql;
+		log = source.log;
+		sourcefile = source.sourcefile;
+	}
 
-		Context context = processor.getContext();
-		log = Log.instance(context);
-		Pair<JCTree, JCTree.JCCompilationUnit> pair =
-				JavacElements.instance(context).getTreeAndTopLevel(element, null, null);
-		JavaFileObject sourcefile = pair == null ? null : pair.snd.sourcefile;
+	private void useSource() {
 		if (sourcefile != null) {
 			log.useSource(sourcefile);
 		}
@@ -55,11 +74,13 @@ class JavacErrorReporter implements Validation.Handler {
 	@Override
 	public void error(int start, int end, String message) {
 		errorcount++;
+		useSource();
 		log.error(literal.pos + start, KEY, message);
 	}
 
 	@Override
 	public void warn(int start, int end, String message) {
+		useSource();
 		log.warning(literal.pos + start, ProcMessager(message));
 //		log.error(literal.pos + start, KEY, message);
 	}
@@ -74,6 +95,7 @@ class JavacErrorReporter implements Validation.Handler {
 			RecognitionException e) {
 		message = prettifyAntlrError(offendingSymbol, line, charPositionInLine, message, e, hql, false);
 		errorcount++;
+		useSource();
 		Token offendingToken = e.getOffendingToken();
 		if ( offendingToken != null ) {
 			log.error(literal.pos+1+offendingToken.getStartIndex(), KEY, message);
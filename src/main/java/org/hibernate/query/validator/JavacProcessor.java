@@ -11,6 +11,14 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 
@@ -25,21 +33,161 @@ import java.util.Set;
 //@SupportedAnnotationTypes(CHECK_HQL)
 public class JavacProcessor extends AbstractProcessor {
 
-//    static Mocker<JavacSessionFactory> sessionFactory = Mocker.variadic(JavacSessionFactory.class);
+    private boolean useSymbolTable;
+    private MockSessionFactory sessionFactory;
+    private Set<? extends Element> rootElements;
+
+    private EntityModel exportedModel;
+    private final List<Element> exportedEntities = new ArrayList<>();
+
+    private ValidationCache validationCache;
+    private ValidationQueue validationQueue;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         ModularityWorkaround.addOpens();
         super.init(processingEnv);
         processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Hibernate Query Validator for Javac");
+        if ("true".equals(processingEnv.getOptions().get(HQLProcessor.EXPORT_MODEL))) {
+            exportedModel = new EntityModel();
+        }
+        validationQueue = new ValidationQueue(processingEnv);
+        String cache = processingEnv.getOptions().get(HQLProcessor.CACHE);
+        if (cache != null) {
+            try {
+                validationCache = ValidationCache.open(Paths.get(cache));
+            }
+            catch (IOException e) {
+                processingEnv.getMessager()
+                        .printMessage(Diagnostic.Kind.WARNING,
+                                "Could not open validation cache: " + e.getMessage());
+            }
+        }
+        useSymbolTable = useSymbolTable(processingEnv.getOptions().get(HQLProcessor.SESSION_FACTORY));
+    }
+
+    /**
+     * The {@link JavacSessionFactory} can't read the exported
+     * entity models of other modules, or write one, and doesn't
+     * fingerprint the classes a query refers to, so it's only
+     * used if none of these things is needed.
+     */
+    private boolean useSymbolTable(String option) {
+        if ("processor".equals(option)) {
+            return false;
+        }
+        boolean possible = validationCache == null && exportedModel == null;
+        if ("javac".equals(option)) {
+            if (!possible) {
+                processingEnv.getMessager()
+                        .printMessage(Diagnostic.Kind.WARNING,
+                                "Session factory 'javac' can't be used with "
+                                        + HQLProcessor.CACHE + " or " + HQLProcessor.EXPORT_MODEL);
+            }
+            else if (hasEntityModels()) {
+                processingEnv.getMessager()
+                        .printMessage(Diagnostic.Kind.WARNING,
+                                "Session factory 'javac' doesn't read the entity models on the class path");
+            }
+            return possible;
+        }
+        else {
+            return possible && !hasEntityModels();
+        }
+    }
+
+    /**
+     * Is there an exported {@link EntityModel} on the class path?
+     * The compiler has already opened every jar, so it's cheap
+     * to ask it.
+     */
+    private boolean hasEntityModels() {
+        try {
+            return getContext().get(JavaFileManager.class)
+                    .getFileForInput(StandardLocation.CLASS_PATH, "", EntityModel.RESOURCE) != null;
+        }
+        catch (IOException|RuntimeException e) {
+            return true;
+        }
     }
 
     ProcessingEnvironment getProcessingEnv() {
         return processingEnv;
     }
 
+    /**
+     * The session factory shared by every query checked during
+     * this compilation. It's created when the first query is
+     * validated, and discarded when processing is over.
+     */
+    MockSessionFactory getSessionFactory() {
+        if (sessionFactory == null) {
+            if (useSymbolTable) {
+                sessionFactory = createJavacSessionFactory();
+            }
+            else {
+                sessionFactory = createProcessorSessionFactory();
+            }
+            newRound();
+        }
+        return sessionFactory;
+    }
+
+    private JavacSessionFactory createJavacSessionFactory() {
+        JavacSessionFactory sessionFactory = JavacSessionFactory.instance.make(HQLProcessor.unwrap(processingEnv));
+        String jandex = processingEnv.getOptions().get(HQLProcessor.JANDEX);
+        if (!"false".equals(jandex)) {
+            sessionFactory.useJandexIndexes(getContext().get(JavaFileManager.class),
+                    "only".equals(jandex));
+        }
+        return sessionFactory;
+    }
+
+    private ProcessorSessionFactory createProcessorSessionFactory() {
+        ProcessorSessionFactory sessionFactory = ProcessorSessionFactory.instance.make(processingEnv);
+        String jandex = processingEnv.getOptions().get(HQLProcessor.JANDEX);
+        if (!"false".equals(jandex)) {
+            sessionFactory.useJandexIndexes(getContext().get(JavaFileManager.class),
+                    "only".equals(jandex));
+        }
+        if (exportedModel == null) {
+            //don't read back the model we're writing
+            sessionFactory.useEntityModels(getContext().get(JavaFileManager.class));
+        }
+        return sessionFactory;
+    }
+
+    private void newRound() {
+        if (sessionFactory instanceof ProcessorSessionFactory) {
+            ((ProcessorSessionFactory) sessionFactory).newRound(rootElements);
+        }
+        else {
+            ((JavacSessionFactory) sessionFactory).newRound(rootElements);
+        }
+    }
+
+    /**
+     * Validate the given query at the end of this round.
+     */
+    void validate(DeferredHandler handler, String hql, boolean checkParams,
+                  Set<Integer> setParameterLabels,
+                  Set<String> setParameterNames,
+                  int errorOffset) {
+        validationQueue.add(handler, hql, checkParams,
+                setParameterLabels, setParameterNames,
+                this::getSessionFactory, errorOffset);
+    }
+
+    void report(DeferredHandler handler) {
+        validationQueue.add(handler);
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        rootElements = roundEnv.getRootElements();
+        if (sessionFactory != null) {
+            newRound();
+        }
         final JavacChecker javacChecker = new JavacChecker(this);
         for (Element element : roundEnv.getRootElements()) {
             if (element instanceof PackageElement) {
@@ -51,15 +199,66 @@ public class JavacProcessor extends AbstractProcessor {
                 javacChecker.checkHQL(element);
             }
         }
+        validationQueue.validate(validationCache);
+        if (exportedModel != null) {
+            for (Element element : roundEnv.getRootElements()) {
+                if (((ProcessorSessionFactory) getSessionFactory()).describe(element, exportedModel)) {
+                    exportedEntities.add(element);
+                }
+            }
+            if (roundEnv.processingOver()) {
+                writeModel();
+            }
+        }
+        if (roundEnv.processingOver()) {
+            validationQueue.close(sessionFactory);
+            if (validationCache != null) {
+                closeValidationCache();
+            }
+            sessionFactory = null;
+            rootElements = null;
+        }
         return false;
     }
 
+    private void writeModel() {
+        if (!exportedModel.isEmpty()) {
+            try {
+                FileObject file = processingEnv.getFiler()
+                        .createResource(StandardLocation.CLASS_OUTPUT, "", EntityModel.RESOURCE,
+                                exportedEntities.toArray(new Element[0]));
+                try (OutputStream stream = file.openOutputStream()) {
+                    exportedModel.write(stream);
+                }
+            }
+            catch (IOException e) {
+                processingEnv.getMessager()
+                        .printMessage(Diagnostic.Kind.WARNING,
+                                "Could not write " + EntityModel.RESOURCE + ": " + e.getMessage());
+            }
+        }
+        exportedModel = new EntityModel();
+        exportedEntities.clear();
+    }
+
+    private void closeValidationCache() {
+        try {
+            validationCache.close();
+        }
+        catch (IOException e) {
+            processingEnv.getMessager()
+                    .printMessage(Diagnostic.Kind.WARNING,
+                            "Could not write validation cache: " + e.getMessage());
+        }
+        validationCache = null;
+    }
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
     }
 
     Context getContext() {
-        return ((JavacProcessingEnvironment) processingEnv).getContext();
+        return ((JavacProcessingEnvironment) HQLProcessor.unwrap(processingEnv)).getContext();
     }
 }
@@ -5,8 +5,10 @@ import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symtab;
 import com.sun.tools.javac.code.TypeTag;
 import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.model.JavacElements;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
 import com.sun.tools.javac.util.Names;
 import org.hibernate.PropertyNotFoundException;
 import org.hibernate.engine.spi.Mapping;
@@ -22,14 +24,20 @@ import org.hibernate.type.internal.BasicTypeImpl;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.type.TypeKind;
+import javax.tools.JavaFileManager;
 import jakarta.persistence.AccessType;
 import java.beans.Introspector;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static java.util.Arrays.stream;
 import static org.hibernate.internal.util.StringHelper.qualify;
@@ -39,10 +47,17 @@ import static org.hibernate.internal.util.StringHelper.unroot;
 import static org.hibernate.query.validator.HQLProcessor.jpa;
 
 /**
+ * A session factory which asks {@code javac} about entities
+ * directly through its symbol table, instead of through the
+ * portable language model.
+ *
+ * @see HQLProcessor#SESSION_FACTORY
+ *
  * @author Gavin King
  */
 public abstract class JavacSessionFactory extends MockSessionFactory {
 
+    static final Mocker<JavacSessionFactory> instance = Mocker.variadic(JavacSessionFactory.class);
     private static final Mocker<Component> component = Mocker.variadic(Component.class);
     private static final Mocker<ToManyAssociationPersister> toManyPersister = Mocker.variadic(ToManyAssociationPersister.class);
     private static final Mocker<ElementCollectionPersister> collectionPersister = Mocker.variadic(ElementCollectionPersister.class);
@@ -51,12 +66,52 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
     private final Names names;
     private final Types types;
     private final Symtab syms;
+    private final JavacElements elements;
+
+    // entities being compiled, and entities found by
+    // searching, by entity name, since an entity name
+    // isn't always the name of a class
+    private final Map<String, Symbol.ClassSymbol> entitiesByName = new HashMap<>();
+    // entity names already searched for in vain
+    private final Set<String> missingEntityNames = new HashSet<>();
+    private boolean allModulesIndexed;
+
+    // the types of members, and of embeddables by access type,
+    // when they don't depend on the entity they belong to
+    private final Map<Symbol,Type> memberTypes = new HashMap<>();
+    private final Map<AccessType,Map<Symbol.TypeSymbol,Type>> componentTypes = new EnumMap<>(AccessType.class);
+
+    private JavaFileManager jandexFileManager;
+    private boolean jandexOnly;
+    // null until the indexes have been read
+    private Map<String,String> indexedEntityClassNames;
 
     public JavacSessionFactory(JavacProcessingEnvironment processingEnv) {
         final Context context = processingEnv.getContext();
         names = Names.instance(context);
         types = Types.instance(context);
         syms = Symtab.instance(context);
+        elements = JavacElements.instance(context);
+    }
+
+    /**
+     * Forget whatever was remembered about the previous round,
+     * and remember the entities belonging to this round.
+     */
+    void newRound(Set<? extends Element> rootElements) {
+        clearInterpretations();
+        clearDomainTypes();
+        missingEntityNames.clear();
+        memberTypes.clear();
+        componentTypes.clear();
+        for (Element element: rootElements) {
+            if (element instanceof Symbol.ClassSymbol) {
+                Symbol.ClassSymbol type = (Symbol.ClassSymbol) element;
+                if (isEntity(type)) {
+                    entitiesByName.put(getEntityName(type), type);
+                }
+            }
+        }
     }
 
     @Override
@@ -110,16 +165,20 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
                         (last, current) -> current);
     }
 
-    static Type propertyType(Symbol member,
-                             String entityName, String path,
-                             AccessType defaultAccessType) {
+    Type propertyType(Symbol member,
+                      String entityName, String path,
+                      AccessType defaultAccessType) {
+        Type type = memberTypes.get(member);
+        if (type != null) {
+            return type;
+        }
         com.sun.tools.javac.code.Type memberType = getMemberType(member);
         if (isEmbeddedProperty(member)) {
-            return component.make(memberType.tsym, entityName, path, defaultAccessType);
+            return component(memberType.tsym, entityName, path, defaultAccessType);
         }
         else if (isToOneAssociation(member)) {
             String targetEntity = getToOneTargetEntity(member);
-            return new ManyToOneType(typeConfiguration, targetEntity);
+            type = new ManyToOneType(typeConfiguration, targetEntity);
         }
         else if (isToManyAssociation(member)) {
             return collectionType(memberType, qualify(entityName, path));
@@ -128,20 +187,39 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
             return collectionType(memberType, qualify(entityName,path));
         }
         else if (isEnumProperty(member)) {
-            return new BasicTypeImpl(new EnumJavaType(Object.class), IntegerJdbcType.INSTANCE);
+            type = new BasicTypeImpl(new EnumJavaType(Object.class), IntegerJdbcType.INSTANCE);
         }
         else {
-            Type result = typeConfiguration.getBasicTypeRegistry()
+            type = typeConfiguration.getBasicTypeRegistry()
                     .getRegisteredType(qualifiedName(memberType));
-            return result; //TODO: result == null ? unknownType : result;
         }
+        if (type != null) {
+            //doesn't depend on the entity or path
+            memberTypes.put(member, type);
+        }
+        return type;
+    }
+
+    private Type component(Symbol.TypeSymbol type,
+                           String entityName, String path,
+                           AccessType defaultAccessType) {
+        Map<Symbol.TypeSymbol,Type> components = componentTypes.get(defaultAccessType);
+        if (components != null && components.containsKey(type)) {
+            return components.get(type);
+        }
+        Type result = component.make(type, entityName, path, defaultAccessType, this);
+        if (!dependsOnRole(result)) {
+            componentTypes.computeIfAbsent(defaultAccessType, accessType -> new HashMap<>())
+                    .put(type, result);
+        }
+        return result;
     }
 
-    private static Type elementCollectionElementType(Symbol.TypeSymbol elementType,
-                                                     String role, String path,
-                                                     AccessType defaultAccessType) {
+    private Type elementCollectionElementType(Symbol.TypeSymbol elementType,
+                                              String role, String path,
+                                              AccessType defaultAccessType) {
         if (isEmbeddableType(elementType)) {
-            return component.make(elementType, role, path, defaultAccessType);
+            return component(elementType, role, path, defaultAccessType);
         }
         else {
             return typeConfiguration.getBasicTypeRegistry()
@@ -162,7 +240,8 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
 
         public Component(Symbol.TypeSymbol type,
                   String entityName, String path,
-                  AccessType defaultAccessType) {
+                  AccessType defaultAccessType,
+                  JavacSessionFactory factory) {
             this.type = type;
 
             List<String> names = new ArrayList<>();
@@ -176,7 +255,7 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
                             .getSymbols(symbol -> isPersistable(symbol, accessType))) {
                         String name = propertyName(member);
                         Type propertyType =
-                                propertyType(member, entityName,
+                                factory.propertyType(member, entityName,
                                         qualify(path, name),
                                         defaultAccessType);
                         if (propertyType != null) {
@@ -243,13 +322,14 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
     public static abstract class EntityPersister extends MockEntityPersister {
         private final Symbol.ClassSymbol type;
         private final Types types;
+        private final JavacSessionFactory sessionFactory;
 
         public EntityPersister(String entityName, Symbol.ClassSymbol type, Types types,
                                JavacSessionFactory that) {
             super(entityName, getDefaultAccessType(type), that);
             this.type = type;
             this.types = types;
-            initSubclassPersisters();
+            this.sessionFactory = that;
         }
 
         @Override
@@ -264,7 +344,7 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
                     findPropertyByPath(type, propertyPath,
                             defaultAccessType);
             return symbol == null ? null :
-                    propertyType(symbol, getEntityName(),
+                    sessionFactory.propertyType(symbol, getEntityName(),
                             propertyPath, defaultAccessType);
         }
 
@@ -276,7 +356,7 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
                                    String targetEntityName,
                                    JavacSessionFactory that) {
             super(role, collectionType,
-                    new ManyToOneType(typeConfiguration, targetEntityName),
+                    new ManyToOneType(that.getTypeConfiguration(), targetEntityName),
                     that);
         }
 
@@ -289,6 +369,7 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
     public abstract static class ElementCollectionPersister extends MockCollectionPersister {
         private final Symbol.TypeSymbol elementType;
         private final AccessType defaultAccessType;
+        private final JavacSessionFactory sessionFactory;
 
         public ElementCollectionPersister(String role,
                                    CollectionType collectionType,
@@ -297,11 +378,12 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
                                    AccessType defaultAccessType,
                                    JavacSessionFactory that) {
             super(role, collectionType,
-                    elementCollectionElementType(elementType, role,
+                    that.elementCollectionElementType(elementType, role,
                             propertyPath, defaultAccessType),
                     that);
             this.elementType = elementType;
             this.defaultAccessType = defaultAccessType;
+            this.sessionFactory = that;
         }
 
         @Override
@@ -310,7 +392,7 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
                     findPropertyByPath(elementType, propertyPath,
                             defaultAccessType);
             return symbol == null ? null :
-                    propertyType(symbol, getOwnerEntityName(),
+                    sessionFactory.propertyType(symbol, getOwnerEntityName(),
                             propertyPath, defaultAccessType);
         }
     }
@@ -351,12 +433,64 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
     }
 
     private Symbol.ClassSymbol findEntityByUnqualifiedName(String entityName) {
-        Symbol.ClassSymbol symbol = findEntityByUnqualifiedName(entityName, syms.unnamedModule);
+        Symbol.ClassSymbol symbol = entitiesByName.get(entityName);
+        if (symbol!=null || missingEntityNames.contains(entityName)) {
+            return symbol;
+        }
+        //usually the entity name is the class name
+        symbol = findEntityByUnqualifiedName(entityName, names.fromString(entityName));
+        if (symbol==null && jandexFileManager!=null) {
+            symbol = findIndexedEntity(entityName);
+        }
+        if (symbol==null && !allModulesIndexed && !jandexOnly) {
+            //but otherwise we have to look at every class,
+            //and we may as well remember every entity we see
+            indexEntities(syms.unnamedModule);
+            for (Symbol.ModuleSymbol module: syms.getAllModules()) {
+                indexEntities(module);
+            }
+            allModulesIndexed = true;
+            symbol = entitiesByName.get(entityName);
+        }
+        if (symbol==null) {
+            missingEntityNames.add(entityName);
+        }
+        else {
+            entitiesByName.put(entityName, symbol);
+        }
+        return symbol;
+    }
+
+    /**
+     * Look for entities in the {@code META-INF/jandex.idx} files
+     * on the class path before asking the compiler for the
+     * contents of every package.
+     *
+     * @param jandexOnly if true, never ask the compiler for
+     *                   the contents of every package
+     */
+    void useJandexIndexes(JavaFileManager fileManager, boolean jandexOnly) {
+        this.jandexFileManager = fileManager;
+        this.jandexOnly = jandexOnly;
+    }
+
+    private Symbol.ClassSymbol findIndexedEntity(String entityName) {
+        if (indexedEntityClassNames == null) {
+            indexedEntityClassNames = JandexEntityIndex.entityClassNames(jandexFileManager);
+        }
+        String className = indexedEntityClassNames.get(entityName);
+        //load it, since it's probably not been loaded yet
+        Symbol.ClassSymbol type = className == null ? null : elements.getTypeElement(className);
+        return type != null && isEntity(type) ? type : null;
+    }
+
+    private Symbol.ClassSymbol findEntityByUnqualifiedName(String entityName, Name name) {
+        Symbol.ClassSymbol symbol = findEntityByUnqualifiedName(entityName, name, syms.unnamedModule);
         if (symbol!=null) {
             return symbol;
         }
         for (Symbol.ModuleSymbol module: syms.getAllModules()) {
-            symbol = findEntityByUnqualifiedName(entityName, module);
+            symbol = findEntityByUnqualifiedName(entityName, name, module);
             if (symbol!=null) {
                 return symbol;
             }
@@ -364,11 +498,14 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
         return null;
     }
 
-    private static Symbol.ClassSymbol findEntityByUnqualifiedName(String entityName, Symbol.ModuleSymbol module) {
+    private static Symbol.ClassSymbol findEntityByUnqualifiedName(String entityName, Name name,
+                                                                  Symbol.ModuleSymbol module) {
         for (Symbol pack: module.enclosedPackages) {
             try {
+                //by name, a hashed lookup, which doesn't
+                //complete every other class in the package
                 for (Symbol type: pack.members()
-                        .getSymbols(symbol -> isMatchingEntity(symbol, entityName))) {
+                        .getSymbolsByName(name, symbol -> isMatchingEntity(symbol, entityName))) {
                     return (Symbol.ClassSymbol) type;
                 }
             }
@@ -377,6 +514,23 @@ public abstract class JavacSessionFactory extends MockSessionFactory {
         return null;
     }
 
+    private void indexEntities(Symbol.ModuleSymbol module) {
+        for (Symbol pack: module.enclosedPackages) {
+            try {
+                for (Symbol symbol: pack.members().getSymbols(JavacSessionFactory::isEntityClass)) {
+                    Symbol.ClassSymbol type = (Symbol.ClassSymbol) symbol;
+                    entitiesByName.putIfAbsent(getEntityName(type), type);
+                }
+            }
+            catch (Exception e) {}
+        }
+    }
+
+    private static boolean isEntityClass(Symbol symbol) {
+        return symbol instanceof Symbol.ClassSymbol
+            && isEntity((Symbol.ClassSymbol) symbol);
+    }
+
     private static boolean isMatchingEntity(Symbol symbol, String entityName) {
         if (symbol instanceof Symbol.ClassSymbol) {
             Symbol.ClassSymbol type = (Symbol.ClassSymbol) symbol;
@@ -15,7 +15,6 @@ import java.util.Set;
 
 import static org.hibernate.query.validator.HQLProcessor.hibernate;
 import static org.hibernate.query.validator.HQLProcessor.jpa;
-import static org.hibernate.query.validator.Validation.validate;
 
 /**
  * @author Gavin King
@@ -27,6 +26,7 @@ class JavacTreeScanner extends TreeScanner {
     final Set<String> setOrderBy;
     private final Element element;
     private final TypeElement panacheEntity;
+    private JavacErrorReporter.Source source;
     boolean immediatelyCalled;
 
     public JavacTreeScanner(JavacChecker javacChecker, Element element, TypeElement panacheEntity) {
@@ -38,29 +38,39 @@ class JavacTreeScanner extends TreeScanner {
         setOrderBy = new HashSet<>();
     }
 
+    private JavacErrorReporter.Source getSource() {
+        if (source == null) {
+            source = new JavacErrorReporter.Source(javacChecker.getJavacProcessor(), element);
+        }
+        return source;
+    }
+
     private void check(JCTree.JCLiteral jcLiteral, String hql,
                        boolean inCreateQueryMethod) {
-        JavacErrorReporter handler = new JavacErrorReporter(javacChecker.getJavacProcessor(), jcLiteral, element, hql);
-        validate(hql, inCreateQueryMethod && immediatelyCalled,
-                setParameterLabels, setParameterNames, handler,
-                ProcessorSessionFactory.instance.make(javacChecker.getProcessingEnv()));
+        DeferredHandler handler = new DeferredHandler(
+                new JavacErrorReporter(getSource(), jcLiteral, hql));
+        javacChecker.getJavacProcessor()
+                .validate(handler, hql, inCreateQueryMethod && immediatelyCalled,
+                        setParameterLabels, setParameterNames, 0);
 //                JavacProcessor.sessionFactory.make(javacChecker.getProcessingEnv()));
     }
 
     private void checkPanacheQuery(JCTree.JCLiteral jcLiteral, String targetType, String methodName, String panacheQl,
                                    com.sun.tools.javac.util.List<JCTree.JCExpression> args) {
-        JavacErrorReporter handler =
-                new JavacErrorReporter(javacChecker.getJavacProcessor(), jcLiteral, element, panacheQl);
+        DeferredHandler handler = new DeferredHandler(
+                new JavacErrorReporter(getSource(), jcLiteral, panacheQl));
         collectPanacheArguments(args);
         int[] offset = new int[1];
         String hql = PanacheUtils.panacheQlToHql(handler, targetType, methodName,
                 panacheQl, offset, setParameterLabels, setOrderBy);
-        if (hql == null)
+        if (hql == null) {
+            javacChecker.getJavacProcessor().report(handler);
             return;
-        validate(hql, true,
-                setParameterLabels, setParameterNames, handler,
-                ProcessorSessionFactory.instance.make(javacChecker.getProcessingEnv()),
-                offset[0]);
+        }
+        javacChecker.getJavacProcessor()
+                .validate(handler, hql, true,
+                        setParameterLabels, setParameterNames,
+                        offset[0]);
     }
 
     private void collectPanacheArguments(com.sun.tools.javac.util.List<JCTree.JCExpression> args) {
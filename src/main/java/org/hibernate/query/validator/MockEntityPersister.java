@@ -10,15 +10,11 @@ import org.hibernate.tuple.entity.EntityMetamodel;
 import org.hibernate.type.Type;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
-import static org.hibernate.query.validator.MockSessionFactory.typeConfiguration;
 
 /**
  * @author Gavin King
@@ -29,7 +25,6 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
 
     private final String entityName;
     private final MockSessionFactory factory;
-    private final List<MockEntityPersister> subclassPersisters = new ArrayList<>();
     final AccessType defaultAccessType;
     private final Map<String,Type> propertyTypesByName = new HashMap<>();
 
@@ -39,34 +34,16 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
         this.defaultAccessType = defaultAccessType;
     }
 
-    void initSubclassPersisters() {
-        for (MockEntityPersister other: factory.getMockEntityPersisters()) {
-            other.addPersister(this);
-            this.addPersister(other);
-        }
-    }
-
-    private void addPersister(MockEntityPersister entityPersister) {
-        if (isSubclassPersister(entityPersister)) {
-            subclassPersisters.add(entityPersister);
-        }
-    }
-
-    private Type getSubclassPropertyType(String propertyPath) {
-        return subclassPersisters.stream()
-                .map(sp -> sp.getPropertyType(propertyPath))
-                .filter(Objects::nonNull)
-                .findAny()
-                .orElse(null);
-    }
-
+    /**
+     * Is the entity of the given persister a subtype of this
+     * entity? Called once for each pair of persisters, by the
+     * {@link EntityHierarchy}.
+     */
     abstract boolean isSubclassPersister(MockEntityPersister entityPersister);
 
     @Override
     public boolean isSubclassEntityName(String name) {
-        return isSubclassPersister(subclassPersisters.stream()
-                .filter(persister -> persister.entityName.equals(name))
-                .findFirst().get());
+        return factory.getEntityHierarchy().isSubtype(entityName, name);
     }
 
     @Override
@@ -99,7 +76,8 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
         result = createPropertyType(propertyPath);
         if (result == null) {
             //check subclasses, needed for treat()
-            result = getSubclassPropertyType(propertyPath);
+            result = factory.getEntityHierarchy()
+                    .getSubtypeAttributeType(entityName, propertyPath);
         }
 
         if (result!=null) {
@@ -113,7 +91,7 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
     @Override
     public Type getIdentifierType() {
         //TODO: propertyType(getIdentifierPropertyName())
-        return typeConfiguration.getBasicTypeForJavaType(Long.class);
+        return factory.getTypeConfiguration().getBasicTypeForJavaType(Long.class);
     }
 
     @Override
@@ -135,22 +113,15 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
 
     @Override
     public String getRootEntityName() {
-        for (MockEntityPersister persister : factory.getMockEntityPersisters()) {
-            if (this != persister && persister.isSubclassPersister(this)) {
-                return persister.getRootEntityName();
-            }
-        }
-        return entityName;
+        return factory.getEntityHierarchy().getRootEntityName(entityName);
     }
 
     @Override
     public Set<String> getSubclassEntityNames() {
         Set<String> names = new HashSet<>();
         names.add( entityName );
-        for (MockEntityPersister persister : factory.getMockEntityPersisters()) {
-            if (persister.isSubclassPersister(this)) {
-                names.add(persister.entityName);
-            }
+        for (MockEntityPersister persister : factory.getEntityHierarchy().getSubtypes(entityName)) {
+            names.add(persister.entityName);
         }
         return names;
     }
@@ -197,7 +168,7 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
 
     @Override
     public Type getResolutionType() {
-        return typeConfiguration.getBasicTypeForJavaType(Class.class);
+        return factory.getTypeConfiguration().getBasicTypeForJavaType(Class.class);
     }
 
     @Override
@@ -227,6 +198,6 @@ public abstract class MockEntityPersister implements EntityPersister, Queryable,
 
     @Override
     public Type getDiscriminatorType() {
-        return typeConfiguration.getBasicTypeForJavaType(String.class);
+        return factory.getTypeConfiguration().getBasicTypeForJavaType(String.class);
     }
 }
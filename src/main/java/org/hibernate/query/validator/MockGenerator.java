@@ -0,0 +1,109 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.Version;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+/**
+ * Generates the {@link Mocker mocks} at build time, so that they
+ * are packaged in the jar, and needn't be generated by ByteBuddy
+ * every time the processor starts up. The mocks are only used if
+ * the version of Hibernate on the processor path is the version
+ * they were generated against, since another version might have
+ * new abstract methods.
+ */
+final class MockGenerator {
+
+    private static final String VERSION = "mocks.version";
+
+    // every class which is mocked
+    private static final String[] MOCKED_CLASSES = {
+            "MockSessionFactory$BootstrapSessionFactory",
+            "MockJdbcServicesInitiator$MockJdbcServices",
+            "ProcessorSessionFactory",
+            "ProcessorSessionFactory$Component",
+            "ProcessorSessionFactory$ToManyAssociationPersister",
+            "ProcessorSessionFactory$ElementCollectionPersister",
+            "ProcessorSessionFactory$EntityPersister",
+            "ProcessorSessionFactory$ModelEntityPersister",
+            "ProcessorSessionFactory$ModelElementCollectionPersister",
+            "JavacSessionFactory",
+            "JavacSessionFactory$Component",
+            "JavacSessionFactory$ToManyAssociationPersister",
+            "JavacSessionFactory$ElementCollectionPersister",
+            "JavacSessionFactory$EntityPersister",
+            "ECJSessionFactory",
+            "ECJSessionFactory$Component",
+            "ECJSessionFactory$ToManyAssociationPersister",
+            "ECJSessionFactory$ElementCollectionPersister",
+            "ECJSessionFactory$EntityPersister",
+            "EclipseSessionFactory",
+            "EclipseSessionFactory$Component",
+            "EclipseSessionFactory$ToManyAssociationPersister",
+            "EclipseSessionFactory$ElementCollectionPersister",
+            "EclipseSessionFactory$EntityPersister",
+    };
+
+    private static Boolean current;
+
+    private MockGenerator() {}
+
+    /**
+     * @return the mock of the given class generated at build
+     *         time, or null if there isn't one, or if it was
+     *         generated against a different version of Hibernate
+     */
+    @SuppressWarnings("unchecked")
+    static synchronized <T> Class<? extends T> pregenerated(Class<T> clazz) {
+        if (current == null) {
+            current = Version.getVersionString().equals(generatedVersion());
+        }
+        if (current) {
+            try {
+                return (Class<? extends T>)
+                        Class.forName(Mocker.mockName(clazz), true, clazz.getClassLoader());
+            }
+            catch (ClassNotFoundException | LinkageError e) {
+                return null;
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    private static String generatedVersion() {
+        try (InputStream stream = MockGenerator.class.getResourceAsStream(VERSION)) {
+            return stream == null ? null
+                    : new Scanner(stream, StandardCharsets.UTF_8.name()).nextLine().trim();
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the mocks, and the version of Hibernate they were
+     * generated against, to the given directory.
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args[0]);
+        String packageName = MockGenerator.class.getPackage().getName();
+        for (String className: MOCKED_CLASSES) {
+            Class<?> clazz = Class.forName(packageName + '.' + className, false,
+                    MockGenerator.class.getClassLoader());
+            Mocker.generate(clazz)
+                    .name(Mocker.mockName(clazz))
+                    .make()
+                    .saveIn(directory);
+        }
+        File version = new File(directory, packageName.replace('.', File.separatorChar)
+                + File.separatorChar + VERSION);
+        Files.write(version.toPath(), Version.getVersionString().getBytes(StandardCharsets.UTF_8));
+    }
+}
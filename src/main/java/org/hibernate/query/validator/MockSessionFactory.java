@@ -107,13 +107,16 @@ import org.hibernate.type.descriptor.jdbc.JdbcTypeIndicators;
 import org.hibernate.type.descriptor.jdbc.ObjectJdbcType;
 import org.hibernate.type.spi.TypeConfiguration;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
@@ -127,12 +130,19 @@ public abstract class MockSessionFactory
         implements SessionFactoryImplementor, QueryEngine, RuntimeModelCreationContext, MetadataBuildingOptions,
         BootstrapContext, MetadataBuildingContext, FunctionContributions, SessionFactoryOptions, JdbcTypeIndicators {
 
-    // static so other things can get at it
-    // TODO: make a static instance of this whole object instead!
-    static TypeConfiguration typeConfiguration;
+    // one per factory, since its registries fill lazily, and
+    // it's scoped to the factory, so it can't be shared by
+    // concurrent compilations in one class loader
+    final TypeConfiguration typeConfiguration = new TypeConfiguration();
 
     private final Map<String, MockEntityPersister> entityPersistersByName = new HashMap<>();
     private final Map<String, MockCollectionPersister> collectionPersistersByName = new HashMap<>();
+    private final EntityHierarchy entityHierarchy = new EntityHierarchy();
+
+    // one instance of each domain type, with its attributes,
+    // so that resolving a path doesn't build a new metamodel
+    private final Map<String, MockEntityDomainType<?>> entityDomainTypes = new HashMap<>();
+    private final Map<String, MockMappedDomainType<?>> mappedDomainTypes = new HashMap<>();
 
     private final StandardServiceRegistryImpl serviceRegistry;
     private final SqmFunctionRegistry functionRegistry;
@@ -141,7 +151,70 @@ public abstract class MockSessionFactory
     private final MetadataImplementor bootModel;
     private final MetadataContext metadataContext;
 
+    private static final int MAX_INTERPRETATIONS = 1000;
+
+    /**
+     * The outcome of the semantic analysis of a query.
+     */
+    private static final class Interpretation {
+        final String error;
+        final Set<String> consultedNames;
+
+        Interpretation(String error, Set<String> consultedNames) {
+            this.error = error;
+            this.consultedNames = consultedNames;
+        }
+    }
+
+    // the same query string often occurs more than once, in
+    // a @NamedQuery and in calls to createQuery(), so the
+    // outcome of interpreting it is remembered, keyed by the
+    // scope and the query string, least recently used first
+    private final Map<List<Object>, Interpretation> interpretations =
+            new LinkedHashMap<List<Object>, Interpretation>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, Interpretation> eldest) {
+                    return size() > MAX_INTERPRETATIONS;
+                }
+            };
+    private int interpretationHits;
+    private int interpretationMisses;
+
+    // services which Hibernate asks for over and over while
+    // interpreting a query, created on first use
+    private QueryInterpretationCache interpretationCache;
+    private CacheImplementor cache;
+    private StatisticsImplementor statistics;
+    private NodeBuilder criteriaBuilder;
+    private HqlTranslator hqlTranslator;
+    private SqmTranslatorFactory sqmTranslatorFactory;
+    private NamedObjectRepository namedObjectRepository;
+    private NativeQueryInterpreter nativeQueryInterpreter;
+    private RuntimeMetamodelsImplementor runtimeMetamodels;
+    private IdentifierGeneratorFactory identifierGeneratorFactory;
+    private PhysicalNamingStrategy physicalNamingStrategy;
+    private ImplicitNamingStrategy implicitNamingStrategy;
+    private EntityNotFoundDelegate entityNotFoundDelegate;
+    private CustomEntityDirtinessStrategy customEntityDirtinessStrategy;
+
+    // names of entities and classes consulted while a query
+    // is interpreted
+    private Set<String> consultedNames;
+
     public MockSessionFactory() {
+        this(Bootstrap.instance());
+    }
+
+    /**
+     * @param bootstrap the shared model-independent state, or
+     *                  null if this factory is being used to
+     *                  build it
+     */
+    MockSessionFactory(Bootstrap bootstrap) {
+
+        functionRegistry = bootstrap == null
+                ? new SqmFunctionRegistry()
+                : bootstrap.functionRegistry;
 
         serviceRegistry = StandardServiceRegistryImpl.create(
                 new BootstrapServiceRegistryBuilder().applyClassLoaderService(new ClassLoaderServiceImpl() {
@@ -166,7 +239,6 @@ public abstract class MockSessionFactory
                 emptyMap()
         );
 
-        functionRegistry = new SqmFunctionRegistry();
         metamodel = new MockMappingMetamodelImpl();
 
         bootModel = new MetadataImpl(
@@ -201,17 +273,51 @@ public abstract class MockSessionFactory
                 this
         );
 
-        typeConfiguration = new TypeConfiguration();
         typeConfiguration.scope((MetadataBuildingContext) this);
-        MockJdbcServicesInitiator.genericDialect.initializeFunctionRegistry(this);
-        CommonFunctionFactory functionFactory = new CommonFunctionFactory(this);
-        functionFactory.listagg(null);
-        functionFactory.inverseDistributionOrderedSetAggregates();
-        functionFactory.hypotheticalOrderedSetAggregates();
-        functionFactory.windowFunctions();
+        if (bootstrap == null) {
+            MockJdbcServicesInitiator.genericDialect.initializeFunctionRegistry(this);
+            CommonFunctionFactory functionFactory = new CommonFunctionFactory(this);
+            functionFactory.listagg(null);
+            functionFactory.inverseDistributionOrderedSetAggregates();
+            functionFactory.hypotheticalOrderedSetAggregates();
+            functionFactory.windowFunctions();
+        }
         typeConfiguration.scope((SessionFactoryImplementor) this);
     }
 
+    /**
+     * The parts of the Hibernate bootstrap which don't depend on
+     * the entity model: the {@link SqmFunctionRegistry}. It's built
+     * just once per class loader, so that a Gradle daemon pays for
+     * it once, not once per build, and is never modified afterward.
+     */
+    static final class Bootstrap {
+        private final SqmFunctionRegistry functionRegistry;
+
+        private Bootstrap(MockSessionFactory factory) {
+            functionRegistry = factory.getFunctionRegistry();
+        }
+
+        private static class Holder {
+            static final Bootstrap INSTANCE =
+                    new Bootstrap(Mocker.nullary(BootstrapSessionFactory.class).get());
+        }
+
+        static Bootstrap instance() {
+            return Holder.INSTANCE;
+        }
+    }
+
+    /**
+     * A factory with no entities, used only to build the
+     * {@link Bootstrap}.
+     */
+    public abstract static class BootstrapSessionFactory extends MockSessionFactory {
+        public BootstrapSessionFactory() {
+            super(null);
+        }
+    }
+
     @Override
     public TypeConfiguration getTypeConfiguration() {
         return typeConfiguration;
@@ -228,12 +334,36 @@ public abstract class MockSessionFactory
 
     @Override
     public PhysicalNamingStrategy getPhysicalNamingStrategy() {
-        return new PhysicalNamingStrategyStandardImpl();
+        if (physicalNamingStrategy == null) {
+            physicalNamingStrategy = new PhysicalNamingStrategyStandardImpl();
+        }
+        return physicalNamingStrategy;
     }
 
     @Override
     public ImplicitNamingStrategy getImplicitNamingStrategy() {
-        return new ImplicitNamingStrategyJpaCompliantImpl();
+        if (implicitNamingStrategy == null) {
+            implicitNamingStrategy = new ImplicitNamingStrategyJpaCompliantImpl();
+        }
+        return implicitNamingStrategy;
+    }
+
+    /**
+     * Does the given type contain a collection, whose role names
+     * the entity and path it belongs to?
+     */
+    static boolean dependsOnRole(Type type) {
+        if (type instanceof CollectionType) {
+            return true;
+        }
+        else if (type instanceof CompositeType) {
+            for (Type subtype: ((CompositeType) type).getSubtypes()) {
+                if (dependsOnRole(subtype)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     static CollectionType createCollectionType(String role, String name) {
@@ -288,7 +418,13 @@ public abstract class MockSessionFactory
             return result;
         }
         result = createMockEntityPersister(entityName);
-        entityPersistersByName.put(entityName, result);
+        if (result!=null) {
+            //don't remember misses: the factory lives for the
+            //whole compilation, and the entity might turn up
+            //in a later round or compilation unit
+            entityPersistersByName.put(entityName, result);
+            entityHierarchy.add(result);
+        }
         return result;
     }
 
@@ -298,15 +434,101 @@ public abstract class MockSessionFactory
             return result;
         }
         result = createMockCollectionPersister(entityName);
-        collectionPersistersByName.put(entityName, result);
+        if (result!=null) {
+            collectionPersistersByName.put(entityName, result);
+        }
         return result;
     }
 
-    List<MockEntityPersister> getMockEntityPersisters() {
-        return entityPersistersByName.values()
-                .stream()
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    /**
+     * Interpret a query using the given function, unless the same
+     * query string was already interpreted in the same
+     * {@linkplain #getInterpretationScope scope}, in which case
+     * the remembered outcome is returned.
+     *
+     * @param interpreter performs the semantic analysis, and
+     *                    returns the error message, or null if
+     *                    the query is correct
+     * @return the error message, or null
+     */
+    String interpret(String hql, Supplier<String> interpreter) {
+        List<Object> key = Arrays.asList(getInterpretationScope(), hql);
+        Interpretation interpretation = interpretations.get(key);
+        if (interpretation == null) {
+            interpretationMisses++;
+            Set<String> outerNames = consultedNames;
+            Set<String> names = new HashSet<>();
+            consultedNames = names;
+            try {
+                interpretation = new Interpretation(interpreter.get(), names);
+            }
+            finally {
+                consultedNames = outerNames;
+                if (outerNames != null) {
+                    outerNames.addAll(names);
+                }
+            }
+            interpretations.put(key, interpretation);
+        }
+        else {
+            interpretationHits++;
+            interpretation.consultedNames.forEach(this::consulted);
+        }
+        return interpretation.error;
+    }
+
+    /**
+     * The scope in which names occurring in a query are resolved,
+     * if it's not the same for every query.
+     */
+    Object getInterpretationScope() {
+        return null;
+    }
+
+    /**
+     * Forget every interpretation, since the entities might have
+     * changed.
+     */
+    void clearInterpretations() {
+        interpretations.clear();
+        interpretationCache = null;
+    }
+
+    /**
+     * A description of how often a query was interpreted, and
+     * how often the interpretation was reused.
+     */
+    String describeInterpretations() {
+        return "interpreted " + interpretationMisses + " queries, and reused "
+                + interpretationHits + " interpretations";
+    }
+
+    /**
+     * Start collecting the names of entities and classes which
+     * are consulted while interpreting queries.
+     */
+    void startRecording() {
+        consultedNames = new HashSet<>();
+    }
+
+    /**
+     * @return the names of the entities and classes consulted
+     *         since {@link #startRecording()} was called
+     */
+    Set<String> stopRecording() {
+        Set<String> names = consultedNames;
+        consultedNames = null;
+        return names;
+    }
+
+    void consulted(String name) {
+        if (consultedNames != null && name != null) {
+            consultedNames.add(name);
+        }
+    }
+
+    EntityHierarchy getEntityHierarchy() {
+        return entityHierarchy;
     }
 
     @Override
@@ -363,17 +585,26 @@ public abstract class MockSessionFactory
 
     @Override
     public CacheImplementor getCache() {
-        return new DisabledCaching(this);
+        if (cache == null) {
+            cache = new DisabledCaching(this);
+        }
+        return cache;
     }
 
     @Override
     public EntityNotFoundDelegate getEntityNotFoundDelegate() {
-        return new StandardEntityNotFoundDelegate();
+        if (entityNotFoundDelegate == null) {
+            entityNotFoundDelegate = new StandardEntityNotFoundDelegate();
+        }
+        return entityNotFoundDelegate;
     }
 
     @Override
     public CustomEntityDirtinessStrategy getCustomEntityDirtinessStrategy() {
-        return new DefaultCustomEntityDirtinessStrategy();
+        if (customEntityDirtinessStrategy == null) {
+            customEntityDirtinessStrategy = new DefaultCustomEntityDirtinessStrategy();
+        }
+        return customEntityDirtinessStrategy;
     }
 
     @Override
@@ -420,17 +651,29 @@ public abstract class MockSessionFactory
 
     @Override
     public NativeQueryInterpreter getNativeQueryInterpreter() {
-        return new NativeQueryInterpreterStandardImpl();
+        if (nativeQueryInterpreter == null) {
+            nativeQueryInterpreter = new NativeQueryInterpreterStandardImpl();
+        }
+        return nativeQueryInterpreter;
     }
 
     @Override
     public QueryInterpretationCache getInterpretationCache() {
-        return new QueryInterpretationCacheDisabledImpl(this::getStatistics);
+        if (interpretationCache == null) {
+            //validation never consults Hibernate's cache, and
+            //interpretations are remembered by interpret()
+            interpretationCache =
+                    new QueryInterpretationCacheDisabledImpl(this::getStatistics);
+        }
+        return interpretationCache;
     }
 
     @Override
     public StatisticsImplementor getStatistics() {
-        return new StatisticsImpl(this);
+        if (statistics == null) {
+            statistics = new StatisticsImpl(this);
+        }
+        return statistics;
     }
 
     @Override
@@ -440,14 +683,17 @@ public abstract class MockSessionFactory
 
     @Override
     public NodeBuilder getCriteriaBuilder() {
-        return new SqmCriteriaNodeBuilder(
-                "",
-                "",
-                this,
-                false,
-                ValueHandlingMode.INLINE,
-                () -> MockSessionFactory.this
-        );
+        if (criteriaBuilder == null) {
+            criteriaBuilder = new SqmCriteriaNodeBuilder(
+                    "",
+                    "",
+                    this,
+                    false,
+                    ValueHandlingMode.INLINE,
+                    () -> MockSessionFactory.this
+            );
+        }
+        return criteriaBuilder;
     }
 
     @Override
@@ -456,17 +702,27 @@ public abstract class MockSessionFactory
 
     @Override
     public NamedObjectRepository getNamedObjectRepository() {
-        return new NamedObjectRepositoryImpl(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        if (namedObjectRepository == null) {
+            namedObjectRepository =
+                    new NamedObjectRepositoryImpl(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+        return namedObjectRepository;
     }
 
     @Override
     public HqlTranslator getHqlTranslator() {
-        return new StandardHqlTranslator(MockSessionFactory.this, () -> false);
+        if (hqlTranslator == null) {
+            hqlTranslator = new StandardHqlTranslator(MockSessionFactory.this, () -> false);
+        }
+        return hqlTranslator;
     }
 
     @Override
     public SqmTranslatorFactory getSqmTranslatorFactory() {
-        return new StandardSqmTranslatorFactory();
+        if (sqmTranslatorFactory == null) {
+            sqmTranslatorFactory = new StandardSqmTranslatorFactory();
+        }
+        return sqmTranslatorFactory;
     }
 
     @Override
@@ -486,9 +742,12 @@ public abstract class MockSessionFactory
 
     @Override
     public RuntimeMetamodelsImplementor getRuntimeMetamodels() {
-        RuntimeMetamodelsImpl runtimeMetamodels = new RuntimeMetamodelsImpl();
-        runtimeMetamodels.setJpaMetamodel( metamodel.getJpaMetamodel() );
-        runtimeMetamodels.setMappingMetamodel( metamodel );
+        if (runtimeMetamodels == null) {
+            RuntimeMetamodelsImpl runtimeMetamodels = new RuntimeMetamodelsImpl();
+            runtimeMetamodels.setJpaMetamodel( metamodel.getJpaMetamodel() );
+            runtimeMetamodels.setMappingMetamodel( metamodel );
+            this.runtimeMetamodels = runtimeMetamodels;
+        }
         return runtimeMetamodels;
     }
 
@@ -499,8 +758,9 @@ public abstract class MockSessionFactory
 
     private static final SessionFactoryObserver[] NO_OBSERVERS = new SessionFactoryObserver[0];
     private static final EntityNameResolver[] NO_RESOLVERS = new EntityNameResolver[0];
+    private static final MappingDefaults MAPPING_DEFAULTS = new MockMappingDefaults();
 
-    static MutableJpaCompliance jpaCompliance = new MutableJpaComplianceImpl(emptyMap());
+    private final MutableJpaCompliance jpaCompliance = new MutableJpaComplianceImpl(emptyMap());
 
     @Override
     public MutableJpaCompliance getJpaCompliance() {
@@ -649,6 +909,8 @@ public abstract class MockSessionFactory
     }
 
     private class MockMappingMetamodelImpl extends MappingMetamodelImpl {
+        private MockJpaMetamodelImpl jpaMetamodel;
+
         public MockMappingMetamodelImpl() {
             super(typeConfiguration, serviceRegistry);
         }
@@ -687,7 +949,10 @@ public abstract class MockSessionFactory
 
         @Override
         public JpaMetamodelImplementor getJpaMetamodel() {
-            return new MockJpaMetamodelImpl();
+            if (jpaMetamodel == null) {
+                jpaMetamodel = new MockJpaMetamodelImpl();
+            }
+            return jpaMetamodel;
         }
 
         @Override
@@ -733,12 +998,15 @@ public abstract class MockSessionFactory
 
     @Override
     public IdentifierGeneratorFactory getIdentifierGeneratorFactory() {
-        return new StandardIdentifierGeneratorFactory(serviceRegistry, true);
+        if (identifierGeneratorFactory == null) {
+            identifierGeneratorFactory = new StandardIdentifierGeneratorFactory(serviceRegistry, true);
+        }
+        return identifierGeneratorFactory;
     }
 
     @Override
     public MappingDefaults getMappingDefaults() {
-        return new MockMappingDefaults();
+        return MAPPING_DEFAULTS;
     }
 
     @Override
@@ -754,7 +1022,7 @@ public abstract class MockSessionFactory
         @Override
         public <X> EntityDomainType<X> entity(String entityName) {
             if ( isEntityDefined(entityName) ) {
-                return new MockEntityDomainType<>(entityName);
+                return entityDomainType(entityName);
             }
             else {
                 return null;
@@ -780,7 +1048,7 @@ public abstract class MockSessionFactory
         @Override
         public <X> EntityDomainType<X> findEntityType(Class<X> cls) {
             if ( isEntityDefined( cls.getName() ) ) {
-                return new MockEntityDomainType<>( cls.getName() );
+                return entityDomainType( cls.getName() );
             }
             else {
                 return null;
@@ -803,21 +1071,68 @@ public abstract class MockSessionFactory
         }
     }
 
+    /**
+     * The canonical domain type of the given entity.
+     */
+    @SuppressWarnings("unchecked")
+    <X> MockEntityDomainType<X> entityDomainType(String entityName) {
+        MockEntityDomainType<?> type = entityDomainTypes.get(entityName);
+        if (type == null) {
+            type = new MockEntityDomainType<>(entityName);
+            entityDomainTypes.put(entityName, type);
+        }
+        return (MockEntityDomainType<X>) type;
+    }
+
+    /**
+     * The canonical domain type of the given mapped superclass.
+     */
+    @SuppressWarnings("unchecked")
+    <X> MockMappedDomainType<X> mappedDomainType(String typeName) {
+        MockMappedDomainType<?> type = mappedDomainTypes.get(typeName);
+        if (type == null) {
+            type = new MockMappedDomainType<>(typeName);
+            mappedDomainTypes.put(typeName, type);
+        }
+        return (MockMappedDomainType<X>) type;
+    }
+
+    /**
+     * Forget the domain types and their attributes, since the
+     * entities might have changed.
+     */
+    void clearDomainTypes() {
+        entityDomainTypes.clear();
+        mappedDomainTypes.clear();
+    }
+
     class MockMappedDomainType<X> extends MappedSuperclassTypeImpl<X>{
+        private final Map<String, Optional<PersistentAttribute<X,?>>> declaredAttributes = new HashMap<>();
+
         public MockMappedDomainType(String typeName) {
             super(typeName, false, true, false, null, null, metamodel.getJpaMetamodel());
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public PersistentAttribute<X,?> findDeclaredAttribute(String name) {
-            String typeName = getTypeName();
-            return isFieldDefined(typeName, name)
-                    ? createAttribute(name, typeName, propertyType(typeName, name), this)
-                    : null;
+            //the attribute might be remembered, but the query
+            //still depends on the type
+            consulted(getTypeName());
+            Optional<PersistentAttribute<X,?>> attribute = declaredAttributes.get(name);
+            if (attribute == null) {
+                String typeName = getTypeName();
+                attribute = isFieldDefined(typeName, name)
+                        ? Optional.of(createAttribute(name, typeName, propertyType(typeName, name), this))
+                        : Optional.empty();
+                declaredAttributes.put(name, attribute);
+            }
+            return attribute.orElse(null);
         }
     }
 
     class MockEntityDomainType<X> extends EntityTypeImpl<X> {
+        private final Map<String, Optional<PersistentAttribute<X,?>>> declaredAttributes = new HashMap<>();
 
         public MockEntityDomainType(String entityName) {
             super(entityName, entityName, false, true, false, null, null,
@@ -832,18 +1147,15 @@ public abstract class MockSessionFactory
             }
             String supertype = MockSessionFactory.this.getSupertype(getHibernateEntityName());
             PersistentAttribute<? super Object, ?> superattribute
-                    = new MockMappedDomainType<>(supertype).findAttribute(name);
+                    = mappedDomainType(supertype).findAttribute(name);
             if (superattribute != null) {
                 return (SqmPathSource<?>) superattribute;
             }
-            for (Map.Entry<String, MockEntityPersister> entry : entityPersistersByName.entrySet()) {
-                if (!entry.getValue().getEntityName().equals(getHibernateEntityName())
-                        && isSubtype(entry.getValue().getEntityName(), getHibernateEntityName())) {
-                    PersistentAttribute<? super Object, ?> subattribute
-                            = new MockEntityDomainType<>(entry.getValue().getEntityName()).findAttribute(name);
-                    if (subattribute != null) {
-                        return (SqmPathSource<?>) subattribute;
-                    }
+            for (MockEntityPersister subtype : entityHierarchy.getSubtypes(getHibernateEntityName())) {
+                PersistentAttribute<? super Object, ?> subattribute
+                        = entityDomainType(subtype.getEntityName()).findAttribute(name);
+                if (subattribute != null) {
+                    return (SqmPathSource<?>) subattribute;
                 }
             }
             return null;
@@ -857,7 +1169,7 @@ public abstract class MockSessionFactory
             }
             String supertype = MockSessionFactory.this.getSupertype(getHibernateEntityName());
             PersistentAttribute<? super Object, ?> superattribute
-                    = new MockMappedDomainType<>(supertype).findAttribute(name);
+                    = mappedDomainType(supertype).findAttribute(name);
             if (superattribute != null) {
                 return superattribute;
             }
@@ -865,11 +1177,19 @@ public abstract class MockSessionFactory
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public PersistentAttribute<X,?> findDeclaredAttribute(String name) {
-            String entityName = getHibernateEntityName();
-            return isAttributeDefined(entityName, name)
-                    ? createAttribute(name, entityName, getReferencedPropertyType(entityName, name), this)
-                    : null;
+            consulted(getHibernateEntityName());
+            Optional<PersistentAttribute<X,?>> attribute = declaredAttributes.get(name);
+            if (attribute == null) {
+                String entityName = getHibernateEntityName();
+                attribute = isAttributeDefined(entityName, name)
+                        ? Optional.of(createAttribute(name, entityName,
+                                getReferencedPropertyType(entityName, name), this))
+                        : Optional.empty();
+                declaredAttributes.put(name, attribute);
+            }
+            return attribute.orElse(null);
         }
     }
 
@@ -886,7 +1206,7 @@ public abstract class MockSessionFactory
                     owner,
                     name,
                     AttributeClassification.MANY_TO_ONE,
-                    new MockEntityDomainType<>(type.getName()),
+                    entityDomainType(type.getName()),
                     null,
                     null,
                     false,
@@ -944,7 +1264,7 @@ public abstract class MockSessionFactory
     private DomainType<?> getDomainType(String entityName, CollectionType collectionType, ManagedDomainType<?> owner, Type elementType) {
         if ( elementType.isEntityType() ) {
             String associatedEntityName = collectionType.getAssociatedEntityName(MockSessionFactory.this);
-            return new MockEntityDomainType<>(associatedEntityName);
+            return entityDomainType(associatedEntityName);
         }
         else if ( elementType.isComponentType() ) {
             CompositeType compositeType = (CompositeType) elementType;
@@ -1045,16 +1365,24 @@ public abstract class MockSessionFactory
 
     private EmbeddableTypeImpl<Object> createEmbeddableDomainType(String entityName, CompositeType compositeType, ManagedDomainType<?> owner) {
         return new EmbeddableTypeImpl<Object>(new UnknownBasicJavaType<>(Object.class), true, metamodel.getJpaMetamodel()) {
+            private final Map<String, PersistentAttribute<Object, Object>> attributes = new HashMap<>();
+
             @Override
+            @SuppressWarnings("unchecked")
             public PersistentAttribute<Object, Object> findAttribute(String name) {
-                int i = compositeType.getPropertyIndex(name);
-                Type subtype = compositeType.getSubtypes()[i];
-                return createAttribute(
-                        name,
-                        entityName, //TOOD: WRONG!!!
-                        subtype,
-                        owner
-                );
+                PersistentAttribute<Object, Object> attribute = attributes.get(name);
+                if (attribute == null) {
+                    int i = compositeType.getPropertyIndex(name);
+                    Type subtype = compositeType.getSubtypes()[i];
+                    attribute = createAttribute(
+                            name,
+                            entityName, //TOOD: WRONG!!!
+                            subtype,
+                            owner
+                    );
+                    attributes.put(name, attribute);
+                }
+                return attribute;
             }
         };
     }
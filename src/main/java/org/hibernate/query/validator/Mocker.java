@@ -1,13 +1,16 @@
 package org.hibernate.query.validator;
 
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.DynamicType;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.Supplier;
 
+import static java.lang.invoke.MethodType.methodType;
 import static net.bytebuddy.implementation.FixedValue.value;
+import static net.bytebuddy.implementation.MethodCall.invoke;
 import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
 import static net.bytebuddy.matcher.ElementMatchers.returns;
 
@@ -16,23 +19,41 @@ public interface Mocker<T> {
 
 	T make(Object... args);
 
-	Map<Class<?>, Class<?>> mocks = new HashMap<>();
+	// weakly keyed by the mocked class, and so by its class
+	// loader, since a Gradle daemon runs builds concurrently,
+	// and outlives the class loaders of its builds
+	ClassValue<Class<?>> mocks = new ClassValue<Class<?>>() {
+		@Override
+		protected Class<?> computeValue(Class<?> clazz) {
+			Class<?> mock = MockGenerator.pregenerated(clazz);
+			return mock == null
+					? generate(clazz).make().load(clazz.getClassLoader()).getLoaded()
+					: mock;
+		}
+	};
 
+	@SuppressWarnings("unchecked")
 	static <T> Supplier<T> nullary(Class<T> clazz) {
+		MethodHandle constructor;
 		try {
-			Class<? extends T> mock = load(clazz);
-			return () -> {
-				try {
-					return mock.newInstance();
-				}
-				catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-			};
+			constructor = MethodHandles.publicLookup()
+					.findConstructor(load(clazz), methodType(void.class))
+					.asType(methodType(Object.class));
 		}
 		catch (Exception e) {
 			throw new RuntimeException(e);
 		}
+		return () -> {
+			try {
+				return (T) (Object) constructor.invokeExact();
+			}
+			catch (RuntimeException | Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		};
 	}
 
 	@SuppressWarnings("unchecked")
@@ -42,11 +63,23 @@ public interface Mocker<T> {
 			throw new RuntimeException("more than one constructor for " + clazz);
 		}
 		Constructor<?> constructor = constructors[0];
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.publicLookup().unreflectConstructor(constructor)
+					.asSpreader(Object[].class, constructor.getParameterCount())
+					.asType(methodType(Object.class, Object[].class));
+		}
+		catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
 		return (args) -> {
 			try {
-				return (T) constructor.newInstance(args);
+				return (T) (Object) handle.invokeExact(args);
 			}
-			catch (Exception e) {
+			catch (RuntimeException | Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
 				throw new RuntimeException(e);
 			}
 		};
@@ -54,28 +87,56 @@ public interface Mocker<T> {
 
 	@SuppressWarnings("unchecked")
 	static <T> Class<? extends T> load(Class<T> clazz) {
-		if (mocks.containsKey(clazz)) {
-			return (Class<? extends T>) mocks.get(clazz);
+		return (Class<? extends T>) mocks.get(clazz);
+	}
+
+	/**
+	 * The name of the mock of the given class.
+	 */
+	static String mockName(Class<?> clazz) {
+		return clazz.getName() + "$Mock";
+	}
+
+	/**
+	 * A subclass of the given class, implementing its abstract
+	 * methods to return an empty value. It's given a name only
+	 * when generated at build time, so that a mock generated at
+	 * runtime never clashes with one packaged in the jar.
+	 *
+	 * @see MockGenerator
+	 */
+	static <T> DynamicType.Builder<T> generate(Class<T> clazz) {
+		try {
+			return new ByteBuddy()
+					.subclass(clazz)
+					.method(returns(String.class).and(isAbstract()))
+							.intercept(value(""))
+					.method(returns(boolean.class).and(isAbstract()))
+							.intercept(value(false))
+					.method(returns(int.class).and(isAbstract()))
+							.intercept(value(0))
+					.method(returns(long.class).and(isAbstract()))
+							.intercept(value(0L))
+					//not a FixedValue, since that's initialized
+					//reflectively, after the class is loaded
+					.method(returns(int[].class).and(isAbstract()))
+							.intercept(invoke(Mocker.class.getMethod("noInts")))
+					.method(returns(String[].class).and(isAbstract()))
+							.intercept(invoke(Mocker.class.getMethod("noStrings")));
 		}
-		Class<? extends T> mock =
-				new ByteBuddy()
-						.subclass(clazz)
-						.method(returns(String.class).and(isAbstract()))
-								.intercept(value(""))
-						.method(returns(boolean.class).and(isAbstract()))
-								.intercept(value(false))
-						.method(returns(int.class).and(isAbstract()))
-								.intercept(value(0))
-						.method(returns(long.class).and(isAbstract()))
-								.intercept(value(0L))
-						.method(returns(int[].class).and(isAbstract()))
-								.intercept(value(new int[0]))
-						.method(returns(String[].class).and(isAbstract()))
-								.intercept(value(new String[0]))
-						.make()
-						.load(clazz.getClassLoader())
-						.getLoaded();
-		mocks.put(clazz,mock);
-		return mock;
+		catch (NoSuchMethodException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	int[] NO_INTS = new int[0];
+	String[] NO_STRINGS = new String[0];
+
+	static int[] noInts() {
+		return NO_INTS;
+	}
+
+	static String[] noStrings() {
+		return NO_STRINGS;
 	}
 }
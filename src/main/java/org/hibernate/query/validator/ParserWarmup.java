@@ -0,0 +1,65 @@
+package org.hibernate.query.validator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Warms up the DFA which ANTLR shares between all instances of
+ * {@code HqlParser} loaded by the same class loader, by parsing
+ * a bundled corpus of representative queries. Otherwise, the
+ * first few hundred queries of a build pay for building it. It's
+ * only worth doing on a {@linkplain BackgroundWarmup background
+ * thread}, since on the compiler thread the corpus costs as much
+ * as the queries it warms up for.
+ */
+final class ParserWarmup {
+
+    private static final String CORPUS = "warmup.hql";
+
+    private static boolean warm;
+
+    private ParserWarmup() {}
+
+    /**
+     * Parse the corpus, unless it was already parsed by this
+     * class loader.
+     */
+    static synchronized void warmUp() {
+        if (!warm) {
+            warm = true;
+            for (String hql: corpus()) {
+                //the diagnostics are never reported
+                Validation.parse(hql, new DeferredHandler(null));
+            }
+        }
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1_000_000.0);
+    }
+
+    private static List<String> corpus() {
+        List<String> corpus = new ArrayList<>();
+        try (InputStream stream = ParserWarmup.class.getResourceAsStream(CORPUS)) {
+            if (stream != null) {
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        corpus.add(line);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            //just don't warm up
+        }
+        return corpus;
+    }
+}
@@ -33,15 +33,23 @@ import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
+import javax.tools.JavaFileManager;
 
 import jakarta.persistence.AccessType;
 import java.beans.Introspector;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
 import static org.hibernate.internal.util.StringHelper.qualify;
 import static org.hibernate.internal.util.StringHelper.root;
 import static org.hibernate.internal.util.StringHelper.split;
@@ -57,6 +65,8 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
     private static final Mocker<ToManyAssociationPersister> toManyPersister = Mocker.variadic(ToManyAssociationPersister.class);
     private static final Mocker<ElementCollectionPersister> collectionPersister = Mocker.variadic(ElementCollectionPersister.class);
     private static final Mocker<EntityPersister> entityPersister = Mocker.variadic(EntityPersister.class);
+    private static final Mocker<ModelEntityPersister> modelEntityPersister = Mocker.variadic(ModelEntityPersister.class);
+    private static final Mocker<ModelElementCollectionPersister> modelCollectionPersister = Mocker.variadic(ModelElementCollectionPersister.class);
 
     private static final CharSequence jakartaPersistence = new StringBuilder("jakarta").append('.').append("persistence");
     private static final CharSequence javaxPersistence = new StringBuilder("javax").append('.').append("persistence");
@@ -71,6 +81,10 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
 
     @Override
     MockEntityPersister createMockEntityPersister(String entityName) {
+        EntityModel.ManagedType modelEntity = findModelEntity(entityName);
+        if (modelEntity != null) {
+            return modelEntityPersister.make(entityName, modelEntity, this);
+        }
         TypeElement type = findEntityClass(entityName);
         return type == null ? null : entityPersister.make(entityName, type, this);
     }
@@ -79,6 +93,10 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
     MockCollectionPersister createMockCollectionPersister(String role) {
         String entityName = root(role); //only works because entity names don't contain dots
         String propertyPath = unroot(role);
+        EntityModel.ManagedType modelEntity = findModelEntity(entityName);
+        if (modelEntity != null) {
+            return createModelCollectionPersister(role, modelEntity, propertyPath);
+        }
         TypeElement entityClass = findEntityClass(entityName);
         AccessType defaultAccessType = getDefaultAccessType(entityClass);
         Element property = findPropertyByPath(entityClass, propertyPath, defaultAccessType);
@@ -99,6 +117,10 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
 
     @Override
     Type propertyType(String typeName, String propertyPath) {
+        EntityModel.ManagedType modelType = findModelType(typeName);
+        if (modelType != null) {
+            return modelPropertyType(modelType, typeName, propertyPath);
+        }
         TypeElement type = findClassByQualifiedName(typeName);
         AccessType accessType = getAccessType(type, AccessType.FIELD);
         Element propertyByPath = findPropertyByPath(type, propertyPath, accessType);
@@ -106,7 +128,7 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
                 : propertyType(propertyByPath, typeName, propertyPath, accessType);
     }
 
-    private static Element findPropertyByPath(TypeElement type,
+    private Element findPropertyByPath(TypeElement type,
             String propertyPath,
             AccessType defaultAccessType) {
         return stream(split(".", propertyPath))
@@ -115,7 +137,7 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
                         (last, current) -> current);
     }
 
-    private static Element dereference(AccessType defaultAccessType, Element symbol, String segment) {
+    private Element dereference(AccessType defaultAccessType, Element symbol, String segment) {
         if (symbol == null) {
             return null;
         }
@@ -127,16 +149,20 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
         }
     }
 
-    static Type propertyType(Element member,
-                             String entityName, String path,
-                             AccessType defaultAccessType) {
+    Type propertyType(Element member,
+                      String entityName, String path,
+                      AccessType defaultAccessType) {
+        Type type = memberTypes.get(member);
+        if (type != null) {
+            return type;
+        }
         TypeMirror memberType = memberType(member);
         if (isEmbeddedProperty(member)) {
-            return component.make(asElement(memberType), entityName, path, defaultAccessType);
+            return component((TypeElement) asElement(memberType), entityName, path, defaultAccessType);
         }
         else if (isToOneAssociation(member)) {
             String targetEntity = getToOneTargetEntity(member);
-            return new ManyToOneType(typeConfiguration, targetEntity);
+            type = new ManyToOneType(typeConfiguration, targetEntity);
         }
         else if (isToManyAssociation(member)) {
             return collectionType(memberType, qualify(entityName, path));
@@ -145,12 +171,17 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
             return collectionType(memberType, qualify(entityName, path));
         }
         else if (isEnumProperty(member)) {
-            return new BasicTypeImpl(new EnumJavaType(Enum.class), enumJdbcType(member));
+            type = new BasicTypeImpl(new EnumJavaType(Enum.class), enumJdbcType(member));
         }
         else {
-            return typeConfiguration.getBasicTypeRegistry()
+            type = typeConfiguration.getBasicTypeRegistry()
                     .getRegisteredType(qualifiedName(memberType));
         }
+        if (type != null) {
+            //doesn't depend on the entity or path
+            memberTypes.put(member, type);
+        }
+        return type;
     }
 
     private static JdbcType enumJdbcType(Element member) {
@@ -161,11 +192,11 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
                 : IntegerJdbcType.INSTANCE;
     }
 
-    private static Type elementCollectionElementType(TypeElement elementType,
+    private Type elementCollectionElementType(TypeElement elementType,
             String role, String path,
             AccessType defaultAccessType) {
         if (isEmbeddableType(elementType)) {
-            return component.make(elementType, role, path, defaultAccessType);
+            return component(elementType, role, path, defaultAccessType);
         }
         else {
             return typeConfiguration.getBasicTypeRegistry()
@@ -177,41 +208,58 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
         return createCollectionType(role, simpleName(type));
     }
 
-    public static abstract class Component implements CompositeType {
-        private final String[] propertyNames;
-        private final Type[] propertyTypes;
-
-        TypeElement type;
+    private Type component(TypeElement type,
+            String entityName, String path,
+            AccessType defaultAccessType) {
+        Map<TypeElement,Type> components = componentTypes.get(defaultAccessType);
+        if (components != null && components.containsKey(type)) {
+            return components.get(type);
+        }
+        Type result = createComponent(type, entityName, path, defaultAccessType);
+        if (!dependsOnRole(result)) {
+            componentTypes.computeIfAbsent(defaultAccessType, accessType -> new HashMap<>())
+                    .put(type, result);
+        }
+        return result;
+    }
 
-        public Component(TypeElement type,
-                String entityName, String path,
-                AccessType defaultAccessType) {
-            this.type = type;
+    private Type createComponent(TypeElement type,
+            String entityName, String path,
+            AccessType defaultAccessType) {
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
 
-            List<String> names = new ArrayList<>();
-            List<Type> types = new ArrayList<>();
-
-            while (type!=null) {
-                if (isMappedClass(type)) { //ignore unmapped intervening classes
-                    AccessType accessType = getAccessType(type, defaultAccessType);
-                    for (Element member: type.getEnclosedElements()) {
-                        if (isPersistable(member, accessType)) {
-                            String name = propertyName(member);
-                            Type propertyType =
-                                    propertyType(member, entityName,
-                                            qualify(path, name), defaultAccessType);
-                            if (propertyType != null) {
-                                names.add(name);
-                                types.add(propertyType);
-                            }
-                        }
+        String name = type.getSimpleName().toString();
+        while (type!=null) {
+            MemberTable members = memberTable(type);
+            if (members.isMapped()) { //ignore unmapped intervening classes
+                for (Map.Entry<String, Element> member:
+                        members.getPersistentMembers(defaultAccessType).entrySet()) {
+                    String propertyName = member.getKey();
+                    Type propertyType =
+                            propertyType(member.getValue(), entityName,
+                                    qualify(path, propertyName), defaultAccessType);
+                    if (propertyType != null) {
+                        names.add(propertyName);
+                        types.add(propertyType);
                     }
                 }
-                type = (TypeElement) asElement(type.getSuperclass());
             }
+            type = members.superclass;
+        }
+
+        return component.make(name, names.toArray(new String[0]), types.toArray(new Type[0]));
+    }
 
-            propertyNames = names.toArray(new String[0]);
-            propertyTypes = types.toArray(new Type[0]);
+    public static abstract class Component implements CompositeType {
+        private final String name;
+        private final String[] propertyNames;
+        private final Type[] propertyTypes;
+
+        public Component(String name, String[] propertyNames, Type[] propertyTypes) {
+            this.name = name;
+            this.propertyNames = propertyNames;
+            this.propertyTypes = propertyTypes;
         }
 
         @Override
@@ -229,7 +277,7 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
 
         @Override
         public String getName() {
-            return type.getSimpleName().toString();
+            return name;
         }
 
         @Override
@@ -260,29 +308,49 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
 
     public static abstract class EntityPersister extends MockEntityPersister {
         private final TypeElement type;
-        private final javax.lang.model.util.Types typeUtil;
+        private final ProcessorSessionFactory sessionFactory;
 
         public EntityPersister(String entityName, TypeElement type,
                                ProcessorSessionFactory that) {
-            super(entityName, getDefaultAccessType(type), that);
+            super(entityName, that.getDefaultAccessType(type), that);
             this.type = type;
-            this.typeUtil = that.typeUtil;
-            initSubclassPersisters();
+            this.sessionFactory = that;
         }
 
         @Override
         boolean isSubclassPersister(MockEntityPersister entityPersister) {
-            EntityPersister persister = (EntityPersister) entityPersister;
-            return typeUtil.isSubtype( persister.type.asType(), type.asType() );
+            return sessionFactory.isSubclassPersister(this, entityPersister);
         }
 
         @Override
         Type createPropertyType(String propertyPath) {
-            Element symbol = findPropertyByPath(type, propertyPath, defaultAccessType);
+            Element symbol = sessionFactory.findPropertyByPath(type, propertyPath, defaultAccessType);
             return symbol == null ? null :
-                    propertyType(symbol, getEntityName(), propertyPath, defaultAccessType);
+                    sessionFactory.propertyType(symbol, getEntityName(), propertyPath, defaultAccessType);
+        }
+
+    }
+
+    public static abstract class ModelEntityPersister extends MockEntityPersister {
+        private final EntityModel.ManagedType entity;
+        private final ProcessorSessionFactory sessionFactory;
+
+        public ModelEntityPersister(String entityName, EntityModel.ManagedType entity,
+                                    ProcessorSessionFactory that) {
+            super(entityName, AccessType.FIELD, that);
+            this.entity = entity;
+            this.sessionFactory = that;
+        }
+
+        @Override
+        boolean isSubclassPersister(MockEntityPersister entityPersister) {
+            return sessionFactory.isSubclassPersister(this, entityPersister);
         }
 
+        @Override
+        Type createPropertyType(String propertyPath) {
+            return sessionFactory.modelPropertyType(entity, getEntityName(), propertyPath);
+        }
     }
 
     public abstract static class ToManyAssociationPersister extends MockCollectionPersister {
@@ -291,7 +359,7 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
                                    String targetEntityName,
                                    ProcessorSessionFactory that) {
             super(role, collectionType,
-                    new ManyToOneType(typeConfiguration, targetEntityName),
+                    new ManyToOneType(that.getTypeConfiguration(), targetEntityName),
                     that);
         }
 
@@ -304,6 +372,7 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
     public abstract static class ElementCollectionPersister extends MockCollectionPersister {
         private final TypeElement elementType;
         private final AccessType defaultAccessType;
+        private final ProcessorSessionFactory sessionFactory;
 
         public ElementCollectionPersister(String role,
                 CollectionType collectionType,
@@ -312,40 +381,255 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
                 AccessType defaultAccessType,
                 ProcessorSessionFactory that) {
             super(role, collectionType,
-                    elementCollectionElementType(elementType, role,
+                    that.elementCollectionElementType(elementType, role,
                             propertyPath, defaultAccessType),
                     that);
             this.elementType = elementType;
             this.defaultAccessType = defaultAccessType;
+            this.sessionFactory = that;
         }
 
         @Override
         Type getElementPropertyType(String propertyPath) {
-            Element symbol = findPropertyByPath(elementType, propertyPath, defaultAccessType);
+            Element symbol = sessionFactory.findPropertyByPath(elementType, propertyPath, defaultAccessType);
             return symbol == null ? null :
-                    propertyType(symbol, getOwnerEntityName(), propertyPath, defaultAccessType);
+                    sessionFactory.propertyType(symbol, getOwnerEntityName(), propertyPath, defaultAccessType);
+        }
+    }
+
+    public abstract static class ModelElementCollectionPersister extends MockCollectionPersister {
+        private final EntityModel.ManagedType embeddable;
+        private final ProcessorSessionFactory sessionFactory;
+
+        public ModelElementCollectionPersister(String role,
+                CollectionType collectionType,
+                Type elementType,
+                EntityModel.ManagedType embeddable,
+                ProcessorSessionFactory that) {
+            super(role, collectionType, elementType, that);
+            this.embeddable = embeddable;
+            this.sessionFactory = that;
+        }
+
+        @Override
+        Type getElementPropertyType(String propertyPath) {
+            return embeddable == null ? null :
+                    sessionFactory.modelPropertyType(embeddable, getOwnerEntityName(), propertyPath);
         }
     }
 
     @Override
     boolean isEntityDefined(String entityName) {
-        return findEntityClass(entityName) != null;
+        return findModelEntity(entityName) != null
+            || findEntityClass(entityName) != null;
     }
 
     @Override
     String qualifyName(String entityName) {
+        EntityModel.ManagedType modelEntity = findModelEntity(entityName);
+        if (modelEntity != null) {
+            return modelEntity.simpleName;
+        }
         TypeElement entityClass = findEntityClass(entityName);
         return entityClass == null ? null : entityClass.getSimpleName().toString();
     }
 
     @Override
     boolean isAttributeDefined(String entityName, String fieldName) {
+        EntityModel.ManagedType modelEntity = findModelEntity(entityName);
+        if (modelEntity != null) {
+            return entityModel.getAttribute(modelEntity, fieldName) != null;
+        }
         TypeElement entityClass = findEntityClass(entityName);
         return entityClass != null
             && findPropertyByPath(entityClass, fieldName, getDefaultAccessType(entityClass)) != null;
     }
 
+    /**
+     * Answer questions about entities belonging to other modules
+     * using the {@link EntityModel}s on the class path, if any.
+     */
+    void useEntityModels(JavaFileManager fileManager) {
+        entityModelFileManager = fileManager;
+    }
+
+    private EntityModel getEntityModel() {
+        if (entityModelFileManager != null) {
+            entityModel = EntityModel.load(entityModelFileManager);
+            entityModelFileManager = null;
+        }
+        return entityModel;
+    }
+
+    private EntityModel.ManagedType findModelEntity(String entityName) {
+        consulted(entityName);
+        EntityModel model = getEntityModel();
+        return model == null || sourceTypeNames.contains(entityName) ? null
+                : model.getEntity(entityName);
+    }
+
+    private EntityModel.ManagedType findModelType(String className) {
+        consulted(className);
+        EntityModel model = getEntityModel();
+        return model == null || sourceTypeNames.contains(className) ? null
+                : model.getType(className);
+    }
+
+    private Type modelPropertyType(EntityModel.ManagedType type,
+                                   String entityName, String path) {
+        EntityModel.Attribute attribute = entityModel.getAttribute(type, path);
+        return attribute == null ? null : modelPropertyType(attribute, entityName, path);
+    }
+
+    private Type modelPropertyType(EntityModel.Attribute attribute,
+                                   String entityName, String path) {
+        switch (attribute.kind) {
+            case EMBEDDED:
+                return modelComponent(entityModel.getType(attribute.type), entityName, path);
+            case TO_ONE:
+                return new ManyToOneType(typeConfiguration, attribute.type);
+            case TO_MANY:
+            case ELEMENT_COLLECTION:
+                return createCollectionType(qualify(entityName, path), attribute.collection);
+            case ENUM:
+                return new BasicTypeImpl(new EnumJavaType(Enum.class),
+                        "STRING".equals(attribute.type)
+                                ? VarcharJdbcType.INSTANCE
+                                : IntegerJdbcType.INSTANCE);
+            default:
+                return typeConfiguration.getBasicTypeRegistry()
+                        .getRegisteredType(attribute.type);
+        }
+    }
+
+    private Type modelComponent(EntityModel.ManagedType embeddable,
+                                String entityName, String path) {
+        if (embeddable == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        for (EntityModel.Attribute attribute: embeddable.attributes.values()) {
+            Type propertyType =
+                    modelPropertyType(attribute, entityName,
+                            qualify(path, attribute.name));
+            if (propertyType != null) {
+                names.add(attribute.name);
+                types.add(propertyType);
+            }
+        }
+        return component.make(embeddable.simpleName,
+                names.toArray(new String[0]), types.toArray(new Type[0]));
+    }
+
+    private MockCollectionPersister createModelCollectionPersister(String role,
+            EntityModel.ManagedType modelEntity, String propertyPath) {
+        EntityModel.Attribute attribute = entityModel.getAttribute(modelEntity, propertyPath);
+        if (attribute == null) {
+            return null;
+        }
+        CollectionType collectionType = createCollectionType(role, attribute.collection);
+        switch (attribute.kind) {
+            case TO_MANY:
+                return toManyPersister.make(role, collectionType, attribute.type, this);
+            case ELEMENT_COLLECTION:
+                EntityModel.ManagedType embeddable = entityModel.getType(attribute.type);
+                Type elementType = embeddable == null
+                        ? typeConfiguration.getBasicTypeRegistry().getRegisteredType(attribute.type)
+                        : modelComponent(embeddable, role, propertyPath);
+                return modelCollectionPersister.make(role, collectionType,
+                        elementType, embeddable, this);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Add the given root element to the {@link EntityModel}, if
+     * it's an entity, along with any embeddables it uses.
+     *
+     * @return true if the element is an entity
+     */
+    boolean describe(Element element, EntityModel model) {
+        if (isEntityClass(element)) {
+            TypeElement type = (TypeElement) element;
+            describe(type, getEntityName(type), getDefaultAccessType(type), model);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    private void describe(TypeElement type, String entityName,
+                          AccessType defaultAccessType, EntityModel model) {
+        String className = type.getQualifiedName().toString();
+        if (model.contains(className)) {
+            return;
+        }
+        List<String> supertypes = new ArrayList<>();
+        for (TypeElement supertype = type; supertype != null;
+                supertype = (TypeElement) asElement(supertype.getSuperclass())) {
+            supertypes.add(supertype.getQualifiedName().toString());
+        }
+        Element superclass = asElement(type.getSuperclass());
+        EntityModel.ManagedType managedType =
+                new EntityModel.ManagedType(className, simpleName(type), entityName,
+                        superclass == null ? null : simpleName(superclass),
+                        supertypes);
+        model.add(managedType);
+        //iterate up the superclass hierarchy
+        while (type!=null) {
+            MemberTable members = memberTable(type);
+            if (members.isMapped()) { //ignore unmapped intervening classes
+                for (Element member: members.getPersistentMembers(defaultAccessType).values()) {
+                    managedType.add(describeAttribute(member, defaultAccessType, model));
+                }
+            }
+            type = members.superclass;
+        }
+    }
+
+    private EntityModel.Attribute describeAttribute(Element member,
+            AccessType defaultAccessType, EntityModel model) {
+        String name = propertyName(member);
+        TypeMirror memberType = memberType(member);
+        if (isEmbeddedProperty(member)) {
+            TypeElement embeddable = (TypeElement) asElement(memberType);
+            describe(embeddable, null, defaultAccessType, model);
+            return new EntityModel.Attribute(name, EntityModel.Kind.EMBEDDED,
+                    qualifiedName(embeddable), null);
+        }
+        else if (isToOneAssociation(member)) {
+            return new EntityModel.Attribute(name, EntityModel.Kind.TO_ONE,
+                    getToOneTargetEntity(member), null);
+        }
+        else if (isToManyAssociation(member)) {
+            return new EntityModel.Attribute(name, EntityModel.Kind.TO_MANY,
+                    getToManyTargetEntityName(member), simpleName(memberType));
+        }
+        else if (isElementCollectionProperty(member)) {
+            TypeMirror elementType = getElementCollectionElementType(member);
+            Element element = asElement(elementType);
+            if (element instanceof TypeElement && isEmbeddableType((TypeElement) element)) {
+                describe((TypeElement) element, null, defaultAccessType, model);
+            }
+            return new EntityModel.Attribute(name, EntityModel.Kind.ELEMENT_COLLECTION,
+                    qualifiedName(elementType), simpleName(memberType));
+        }
+        else if (isEnumProperty(member)) {
+            return new EntityModel.Attribute(name, EntityModel.Kind.ENUM,
+                    enumJdbcType(member) == VarcharJdbcType.INSTANCE ? "STRING" : "ORDINAL",
+                    null);
+        }
+        else {
+            return new EntityModel.Attribute(name, EntityModel.Kind.BASIC,
+                    qualifiedName(memberType), null);
+        }
+    }
+
     private TypeElement findEntityClass(String entityName) {
+        consulted(entityName);
         if (entityName == null) {
             return null;
         }
@@ -362,82 +646,323 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
         return type != null && isEntity(type) ? type : null;
     }
 
-    //Needed only for ECJ
-    private final Map<String,TypeElement> entityCache = new HashMap<>();
+    // entities by entity name, from the root elements of
+    // each round, and, after the first miss, from every
+    // package the compiler can see
+    private final Map<String,TypeElement> entitiesByName = new HashMap<>();
+    private final Set<String> missingEntityNames = new HashSet<>();
+    private boolean allModulesIndexed;
+
+    // entity names to class names, from Jandex indexes
+    private JavaFileManager jandexFileManager;
+    private boolean jandexOnly;
+    private Map<String,String> indexedEntityClassNames;
+
+    // classes by qualified name, including misses
+    private final Map<String,TypeElement> classesByQualifiedName = new HashMap<>();
+
+    // entities and embeddables of other modules
+    private JavaFileManager entityModelFileManager;
+    private EntityModel entityModel;
+    // names of types in the source code, which take
+    // precedence over the EntityModels
+    private final Set<String> sourceTypeNames = new HashSet<>();
+
+    // fingerprints of entities and classes consulted while
+    // a query is validated, for the ValidationCache
+    private final Map<String,Long> fingerprints = new HashMap<>();
+
+    // the members of each class, as they're needed
+    private final Map<TypeElement,MemberTable> memberTables = new HashMap<>();
+    // the types of members, and of embeddables by access type,
+    // when they don't depend on the entity they belong to
+    private final Map<Element,Type> memberTypes = new HashMap<>();
+    private final Map<AccessType,Map<TypeElement,Type>> componentTypes = new EnumMap<>(AccessType.class);
+
+    /**
+     * Called at the start of each processing round, since the
+     * round might have introduced new entities.
+     */
+    void newRound(Set<? extends Element> rootElements) {
+        missingEntityNames.clear();
+        fingerprints.clear();
+        memberTables.clear();
+        memberTypes.clear();
+        componentTypes.clear();
+        clearInterpretations();
+        clearDomainTypes();
+        classesByQualifiedName.values().removeIf(Objects::isNull);
+        for (Element element: rootElements) {
+            if (element instanceof TypeElement) {
+                sourceTypeNames.add(((TypeElement) element).getQualifiedName().toString());
+            }
+            if (isEntityClass(element)) {
+                TypeElement type = (TypeElement) element;
+                String entityName = getEntityName(type);
+                entitiesByName.put(entityName, type);
+                sourceTypeNames.add(entityName);
+            }
+        }
+    }
+
+    /**
+     * A hash of whatever the given entity name or class name
+     * currently refers to, or zero if it refers to nothing.
+     */
+    long fingerprint(String name) {
+        Long fingerprint = fingerprints.get(name);
+        if (fingerprint == null) {
+            fingerprint = computeFingerprint(name);
+            fingerprints.put(name, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private long computeFingerprint(String name) {
+        EntityModel.ManagedType modelType = findModelEntity(name);
+        if (modelType == null) {
+            modelType = findModelType(name);
+        }
+        if (modelType != null) {
+            return entityModel.fingerprint(modelType);
+        }
+        TypeElement type = findEntityClass(name);
+        if (type == null && name.indexOf('.') > 0) {
+            type = findClassByQualifiedName(name);
+        }
+        if (type == null) {
+            return 0;
+        }
+        else if (isEntity(type) || isEmbeddableType(type)) {
+            EntityModel model = new EntityModel();
+            if (isEntity(type)) {
+                describe(type, getEntityName(type), getDefaultAccessType(type), model);
+            }
+            else {
+                describe(type, null, getAccessType(type, AccessType.FIELD), model);
+            }
+            return model.fingerprint(model.getType(type.getQualifiedName().toString()));
+        }
+        else {
+            //for a class named in a 'select new', for example
+            StringBuilder signature = new StringBuilder()
+                    .append(type.getQualifiedName())
+                    .append(':')
+                    .append(type.getSuperclass());
+            for (Element member: type.getEnclosedElements()) {
+                signature.append(';')
+                        .append(member.getKind())
+                        .append(' ')
+                        .append(member.getSimpleName())
+                        .append(' ')
+                        .append(member.asType());
+            }
+            return EntityModel.hash(signature.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Look for entities in the {@code META-INF/jandex.idx} files
+     * on the class path before asking the compiler for the
+     * contents of every package.
+     *
+     * @param jandexOnly if true, never ask the compiler for
+     *                   the contents of every package
+     */
+    void useJandexIndexes(JavaFileManager fileManager, boolean jandexOnly) {
+        this.jandexFileManager = fileManager;
+        this.jandexOnly = jandexOnly;
+    }
 
     private TypeElement findEntityByUnqualifiedName(String entityName) {
-        TypeElement cached = entityCache.get(entityName);
-        if ( cached != null ) {
-            return cached;
-        }
-        TypeElement symbol =
-                findEntityByUnqualifiedName(entityName,
-                        elementUtil.getModuleElement(""));
-        if (symbol!=null) {
-            entityCache.put(entityName, symbol);
-            return symbol;
-        }
-        for (ModuleElement module: elementUtil.getAllModuleElements()) {
-            symbol = findEntityByUnqualifiedName(entityName, module);
-            if (symbol!=null) {
-                entityCache.put(entityName, symbol);
-                return symbol;
+        TypeElement entity = entitiesByName.get(entityName);
+        if (entity != null || missingEntityNames.contains(entityName)) {
+            return entity;
+        }
+        if (jandexFileManager != null) {
+            entity = findIndexedEntity(entityName);
+            if (entity != null) {
+                entitiesByName.put(entityName, entity);
+                return entity;
             }
         }
-        return null;
+        if (!allModulesIndexed && !jandexOnly) {
+            indexEntities(elementUtil.getModuleElement(""));
+            for (ModuleElement module: elementUtil.getAllModuleElements()) {
+                indexEntities(module);
+            }
+            allModulesIndexed = true;
+            entity = entitiesByName.get(entityName);
+        }
+        if (entity == null) {
+            missingEntityNames.add(entityName);
+        }
+        return entity;
     }
 
-    private static TypeElement findEntityByUnqualifiedName(String entityName, ModuleElement module) {
+    private TypeElement findIndexedEntity(String entityName) {
+        if (indexedEntityClassNames == null) {
+            indexedEntityClassNames = JandexEntityIndex.entityClassNames(jandexFileManager);
+        }
+        TypeElement type = findClassByQualifiedName(indexedEntityClassNames.get(entityName));
+        return type != null && isEntity(type) ? type : null;
+    }
+
+    private void indexEntities(ModuleElement module) {
         for (Element element: module.getEnclosedElements()) {
             if (element.getKind() == ElementKind.PACKAGE) {
                 PackageElement pack = (PackageElement) element;
                 try {
                     for (Element member : pack.getEnclosedElements()) {
-                        if (isMatchingEntity(member, entityName)) {
-                            return (TypeElement) member;
+                        if (isEntityClass(member)) {
+                            TypeElement type = (TypeElement) member;
+                            entitiesByName.putIfAbsent(getEntityName(type), type);
                         }
                     }
                 }
                 catch (Exception e) {}
             }
         }
-        return null;
     }
 
-    private static boolean isMatchingEntity(Element symbol, String entityName) {
-        if (symbol.getKind() == ElementKind.CLASS) {
-            TypeElement type = (TypeElement) symbol;
-            return isEntity(type)
-                && getEntityName(type).equals(entityName);
+    private MemberTable memberTable(TypeElement type) {
+        MemberTable members = memberTables.get(type);
+        if (members == null) {
+            members = new MemberTable(type);
+            memberTables.put(type, members);
+        }
+        return members;
+    }
+
+    /**
+     * The members of a class which matter to the validator,
+     * gathered in one pass over its enclosed elements, so that
+     * looking up a property or constructor is a hash probe.
+     */
+    static final class MemberTable {
+        // JPA annotations, as bits
+        static final int ENTITY = 1;
+        static final int EMBEDDABLE = 1 << 1;
+        static final int MAPPED_SUPERCLASS = 1 << 2;
+        static final int ACCESS = 1 << 3;
+        static final int ID = 1 << 4;
+        static final int TRANSIENT = 1 << 5;
+
+        private static final Map<String,Integer> ANNOTATIONS = new HashMap<>();
+        static {
+            ANNOTATIONS.put("Entity", ENTITY);
+            ANNOTATIONS.put("Embeddable", EMBEDDABLE);
+            ANNOTATIONS.put("MappedSuperclass", MAPPED_SUPERCLASS);
+            ANNOTATIONS.put("Access", ACCESS);
+            ANNOTATIONS.put("Id", ID);
+            ANNOTATIONS.put("Transient", TRANSIENT);
+        }
+
+        final TypeElement superclass;
+        // the JPA annotations of the class
+        final int annotations;
+        // from an @Access annotation of the class, or null
+        final AccessType accessType;
+        // implied by an @Id member of the class, or null
+        final AccessType idAccessType;
+        final Set<String> fieldNames = new HashSet<>();
+        // persistent members by property name, in the order
+        // they're declared, for each access type
+        private final Map<String,Element> fieldAccessMembers = new LinkedHashMap<>();
+        private final Map<String,Element> propertyAccessMembers = new LinkedHashMap<>();
+        private final Map<Integer,List<ExecutableElement>> constructorsByArity = new HashMap<>();
+
+        MemberTable(TypeElement type) {
+            superclass = (TypeElement) asElement(type.getSuperclass());
+            annotations = annotations(type);
+            accessType = (annotations & ACCESS) == 0 ? null : getAccessType(type, null);
+            AccessType idAccessType = null;
+            for (Element member: type.getEnclosedElements()) {
+                switch (member.getKind()) {
+                    case CONSTRUCTOR:
+                        ExecutableElement constructor = (ExecutableElement) member;
+                        constructorsByArity.computeIfAbsent(constructor.getParameters().size(),
+                                        arity -> new ArrayList<>())
+                                .add(constructor);
+                        continue;
+                    case FIELD:
+                        fieldNames.add(member.getSimpleName().toString());
+                        break;
+                    case METHOD:
+                        break;
+                    default:
+                        continue;
+                }
+                int memberAnnotations = annotations(member);
+                if (idAccessType == null && (memberAnnotations & ID) != 0) {
+                    idAccessType = member instanceof ExecutableElement
+                            ? AccessType.PROPERTY
+                            : AccessType.FIELD;
+                }
+                if (isPersistable(member, memberAnnotations, AccessType.FIELD)) {
+                    fieldAccessMembers.putIfAbsent(propertyName(member), member);
+                }
+                if (isPersistable(member, memberAnnotations, AccessType.PROPERTY)) {
+                    propertyAccessMembers.putIfAbsent(propertyName(member), member);
+                }
+            }
+            this.idAccessType = idAccessType;
+        }
+
+        private static int annotations(Element element) {
+            int bits = 0;
+            for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+                TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+                Integer bit = ANNOTATIONS.get(annotationType.getSimpleName().toString());
+                if (bit != null && isPersistenceAnnotation(annotationType)) {
+                    bits |= bit;
+                }
+            }
+            return bits;
         }
-        else {
-            return false;
+
+        /**
+         * Is the class an entity, embeddable, or mapped superclass?
+         */
+        boolean isMapped() {
+            return (annotations & (ENTITY | EMBEDDABLE | MAPPED_SUPERCLASS)) != 0;
+        }
+
+        /**
+         * @param defaultAccessType the access type of the hierarchy,
+         *                          unless the class overrides it
+         */
+        Map<String,Element> getPersistentMembers(AccessType defaultAccessType) {
+            AccessType access = accessType == null ? defaultAccessType : accessType;
+            return access == AccessType.PROPERTY ? propertyAccessMembers : fieldAccessMembers;
+        }
+
+        List<ExecutableElement> getConstructors(int arity) {
+            return constructorsByArity.getOrDefault(arity, emptyList());
         }
     }
 
-    private static Element findProperty(TypeElement type, String propertyName,
-                                        AccessType defaultAccessType) {
+    private static boolean isEntityClass(Element symbol) {
+        return symbol.getKind() == ElementKind.CLASS
+            && isEntity((TypeElement) symbol);
+    }
+
+    private Element findProperty(TypeElement type, String propertyName,
+                                 AccessType defaultAccessType) {
         //iterate up the superclass hierarchy
         while (type!=null) {
-            if (isMappedClass(type)) { //ignore unmapped intervening classes
-                AccessType accessType = getAccessType(type, defaultAccessType);
-                for (Element member: type.getEnclosedElements()) {
-                    if (isMatchingProperty(member, propertyName, accessType)) {
-                        return member;
-                    }
+            MemberTable members = memberTable(type);
+            if (members.isMapped()) { //ignore unmapped intervening classes
+                Element member = members.getPersistentMembers(defaultAccessType).get(propertyName);
+                if (member != null) {
+                    return member;
                 }
             }
-            type = (TypeElement) asElement(type.getSuperclass());
+            type = members.superclass;
         }
         return null;
     }
 
-    private static boolean isMatchingProperty(Element symbol, String propertyName,
-                                              AccessType accessType) {
-        return isPersistable(symbol, accessType)
-            && propertyName.equals(propertyName(symbol));
-    }
-
     private static boolean isGetterMethod(ExecutableElement method) {
         if (!method.getParameters().isEmpty()) {
             return false;
@@ -463,18 +988,25 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
         for (AnnotationMirror mirror : member.getAnnotationMirrors()) {
             TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
             if ( annotationType.getSimpleName().contentEquals(annotationName)
-                    && annotationType.getNestingKind() == NestingKind.TOP_LEVEL ) {
-                PackageElement pack = (PackageElement) annotationType.getEnclosingElement();
-                Name packageName = pack.getQualifiedName();
-                if (packageName.contentEquals(jakartaPersistence)
-                        || packageName.contentEquals(javaxPersistence)) {
-                    return mirror;
-                }
+                    && isPersistenceAnnotation(annotationType) ) {
+                return mirror;
             }
         }
         return null;
     }
 
+    private static boolean isPersistenceAnnotation(TypeElement annotationType) {
+        if ( annotationType.getNestingKind() == NestingKind.TOP_LEVEL ) {
+            PackageElement pack = (PackageElement) annotationType.getEnclosingElement();
+            Name packageName = pack.getQualifiedName();
+            return packageName.contentEquals(jakartaPersistence)
+                || packageName.contentEquals(javaxPersistence);
+        }
+        else {
+            return false;
+        }
+    }
+
     private static Object getAnnotationMember(AnnotationMirror annotation, String memberName) {
         if ( annotation == null ) {
             return null;
@@ -488,31 +1020,16 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
         return null;
     }
 
-    private static boolean isMappedClass(TypeElement type) {
-        return hasAnnotation(type, "Entity")
-            || hasAnnotation(type, "Embeddable")
-            || hasAnnotation(type, "MappedSuperclass");
-    }
-
     private static boolean isEntity(TypeElement member) {
         return member.getKind() == ElementKind.CLASS
 //            && member.getAnnotation(entityAnnotation)!=null;
             && hasAnnotation(member, "Entity");
     }
 
-    private static boolean isId(Element member) {
-        return hasAnnotation(member, "Id");
-    }
-
     private static boolean isStatic(Element member) {
         return member.getModifiers().contains(Modifier.STATIC);
     }
 
-    private static boolean isTransient(Element member) {
-        return hasAnnotation(member, "Transient")
-            || member.getModifiers().contains(Modifier.TRANSIENT);
-    }
-
     private static boolean isEnumProperty(Element member) {
         if (hasAnnotation(member, "Enumerated")) {
             return true;
@@ -705,14 +1222,57 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
 
     @Override
     protected String getSupertype(String entityName) {
+        EntityModel.ManagedType modelEntity = findModelEntity(entityName);
+        if (modelEntity != null) {
+            return modelEntity.superclassName;
+        }
         return asElement(findEntityClass(entityName).getSuperclass())
                 .getSimpleName().toString();
     }
 
     @Override
     protected boolean isSubtype(String entityName, String subtypeEntityName) {
-        return typeUtil.isSubtype( findEntityClass(entityName).asType(),
-                findEntityClass(subtypeEntityName).asType());
+        if (findModelEntity(entityName) == null && findModelEntity(subtypeEntityName) == null) {
+            return typeUtil.isSubtype( findEntityClass(entityName).asType(),
+                    findEntityClass(subtypeEntityName).asType());
+        }
+        else {
+            List<String> supertypes = getSupertypeNames(entityName);
+            List<String> subtypeSupertypes = getSupertypeNames(subtypeEntityName);
+            return !supertypes.isEmpty() && !subtypeSupertypes.isEmpty()
+                && supertypes.contains(subtypeSupertypes.get(0));
+        }
+    }
+
+    private boolean isSubclassPersister(MockEntityPersister persister,
+                                        MockEntityPersister subclassPersister) {
+        if (persister instanceof EntityPersister
+                && subclassPersister instanceof EntityPersister) {
+            return typeUtil.isSubtype( ((EntityPersister) subclassPersister).type.asType(),
+                    ((EntityPersister) persister).type.asType() );
+        }
+        else {
+            return getSupertypeNames(subclassPersister.getEntityName())
+                    .contains(getSupertypeNames(persister.getEntityName()).get(0));
+        }
+    }
+
+    /**
+     * @return the qualified names of the entity class and its
+     *         superclasses, starting with the entity class
+     */
+    private List<String> getSupertypeNames(String entityName) {
+        EntityModel.ManagedType modelEntity = findModelEntity(entityName);
+        if (modelEntity != null) {
+            return modelEntity.supertypes;
+        }
+        List<String> supertypes = new ArrayList<>();
+        TypeElement type = findEntityClass(entityName);
+        while (type != null) {
+            supertypes.add(type.getQualifiedName().toString());
+            type = (TypeElement) asElement(type.getSuperclass());
+        }
+        return supertypes;
     }
 
     @Override
@@ -724,9 +1284,7 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
     boolean isFieldDefined(String qualifiedClassName, String fieldName) {
         TypeElement type = findClassByQualifiedName(qualifiedClassName);
         return type != null
-            && type.getEnclosedElements().stream()
-                .anyMatch(element -> element.getKind() == ElementKind.FIELD
-                        && element.getSimpleName().contentEquals(fieldName));
+            && memberTable(type).fieldNames.contains(fieldName);
     }
 
     @Override
@@ -734,69 +1292,64 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
                                  List<org.hibernate.type.Type> argumentTypes) {
         TypeElement symbol = findClassByQualifiedName(qualifiedClassName);
         if (symbol==null) return false;
-        for (Element cons: symbol.getEnclosedElements()) {
-            if ( cons.getKind() == ElementKind.CONSTRUCTOR ) {
-                ExecutableElement constructor = (ExecutableElement) cons;
-                List<? extends VariableElement> parameters = constructor.getParameters();
-                if (parameters.size()==argumentTypes.size()) {
-                    boolean argumentsCheckOut = true;
-                    for (int i=0; i<argumentTypes.size(); i++) {
-                        org.hibernate.type.Type type = argumentTypes.get(i);
-                        VariableElement param = parameters.get(i);
-                        if (param.asType().getKind().isPrimitive()) {
-                            Class<?> primitive;
-                            try {
-                                primitive = toPrimitiveClass( type.getReturnedClass() );
-                            }
-                            catch (Exception e) {
-                                continue;
-                            }
-                            if (!toPrimitiveClass(param).equals(primitive)) {
-                                argumentsCheckOut = false;
-                                break;
-                            }
-                        }
-                        else {
-                            TypeElement typeClass;
-                            if (type instanceof EntityType) {
-                                EntityType entityType = (EntityType) type;
-                                String entityName = entityType.getAssociatedEntityName();
-                                typeClass = findEntityClass(entityName);
-                            }
-                            //TODO:
+        for (ExecutableElement constructor: memberTable(symbol).getConstructors(argumentTypes.size())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            boolean argumentsCheckOut = true;
+            for (int i=0; i<argumentTypes.size(); i++) {
+                org.hibernate.type.Type type = argumentTypes.get(i);
+                VariableElement param = parameters.get(i);
+                if (param.asType().getKind().isPrimitive()) {
+                    Class<?> primitive;
+                    try {
+                        primitive = toPrimitiveClass( type.getReturnedClass() );
+                    }
+                    catch (Exception e) {
+                        continue;
+                    }
+                    if (!toPrimitiveClass(param).equals(primitive)) {
+                        argumentsCheckOut = false;
+                        break;
+                    }
+                }
+                else {
+                    TypeElement typeClass;
+                    if (type instanceof EntityType) {
+                        EntityType entityType = (EntityType) type;
+                        String entityName = entityType.getAssociatedEntityName();
+                        typeClass = findEntityClass(entityName);
+                    }
+                    //TODO:
     //                        else if (type instanceof CompositeCustomType) {
     //                            typeClass = ((Component) ((CompositeCustomType) type).getUserType()).type;
     //                        }
-                            else if (type instanceof BasicType) {
-                                String className;
-                                //sadly there is no way to get the classname
-                                //from a Hibernate Type without trying to load
-                                //the class!
-                                try {
-                                    className = type.getReturnedClass().getName();
-                                }
-                                catch (Exception e) {
-                                    continue;
-                                }
-                                typeClass = findClassByQualifiedName(className);
-                            }
-                            else {
-                                //TODO: what other Hibernate Types do we
-                                //      need to consider here?
-                                continue;
-                            }
-                            if (typeClass != null
-                                    && !typeUtil.isSubtype( typeClass.asType(), param.asType() ) ) {
-                                argumentsCheckOut = false;
-                                break;
-                            }
+                    else if (type instanceof BasicType) {
+                        String className;
+                        //sadly there is no way to get the classname
+                        //from a Hibernate Type without trying to load
+                        //the class!
+                        try {
+                            className = type.getReturnedClass().getName();
                         }
+                        catch (Exception e) {
+                            continue;
+                        }
+                        typeClass = findClassByQualifiedName(className);
+                    }
+                    else {
+                        //TODO: what other Hibernate Types do we
+                        //      need to consider here?
+                        continue;
                     }
-                    if (argumentsCheckOut) {
-                        return true; //matching constructor found!
+                    if (typeClass != null
+                            && !typeUtil.isSubtype( typeClass.asType(), param.asType() ) ) {
+                        argumentsCheckOut = false;
+                        break;
                     }
                 }
             }
+            if (argumentsCheckOut) {
+                return true; //matching constructor found!
+            }
         }
         return false;
     }
@@ -825,20 +1378,28 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
     }
 
     private TypeElement findClassByQualifiedName(String path) {
-        return path == null ? null : elementUtil.getTypeElement(path);
+        consulted(path);
+        if (path == null) {
+            return null;
+        }
+        else if (classesByQualifiedName.containsKey(path)) {
+            return classesByQualifiedName.get(path);
+        }
+        else {
+            TypeElement type = elementUtil.getTypeElement(path);
+            classesByQualifiedName.put(path, type);
+            return type;
+        }
     }
 
-    private static AccessType getDefaultAccessType(TypeElement type) {
+    private AccessType getDefaultAccessType(TypeElement type) {
         //iterate up the superclass hierarchy
         while (type!=null) {
-            for (Element member: type.getEnclosedElements()) {
-                if (isId(member)) {
-                    return member instanceof ExecutableElement
-                            ? AccessType.PROPERTY
-                            : AccessType.FIELD;
-                }
+            MemberTable members = memberTable(type);
+            if (members.idAccessType != null) {
+                return members.idAccessType;
             }
-            type = (TypeElement) asElement(type.getSuperclass());
+            type = members.superclass;
         }
         return AccessType.FIELD;
     }
@@ -859,20 +1420,22 @@ public abstract class ProcessorSessionFactory extends MockSessionFactory {
         }
     }
 
-    private static boolean isPersistable(Element member, AccessType accessType) {
-        if (isStatic(member) || isTransient(member)) {
+    private static boolean isPersistable(Element member, int annotations, AccessType accessType) {
+        if (isStatic(member)
+                || (annotations & MemberTable.TRANSIENT) != 0
+                || member.getModifiers().contains(Modifier.TRANSIENT)) {
             return false;
         }
         else if (member.getKind() == ElementKind.FIELD) {
             return accessType == AccessType.FIELD
 //                || member.getAnnotation( accessAnnotation ) != null;
-                || hasAnnotation(member, "Access");
+                || (annotations & MemberTable.ACCESS) != 0;
         }
         else if (member.getKind() == ElementKind.METHOD) {
             return isGetterMethod((ExecutableElement) member)
                 && (accessType == AccessType.PROPERTY
 //                    || member.getAnnotation( accessAnnotation ) != null);
-                    || hasAnnotation(member, "Access"));
+                    || (annotations & MemberTable.ACCESS) != 0);
         }
         else {
             return false;
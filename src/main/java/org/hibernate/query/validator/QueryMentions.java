@@ -0,0 +1,103 @@
+package org.hibernate.query.validator;
+
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * A quick scan of a source file for the names of the methods
+ * and annotations to which {@link JavacTreeScanner} passes a
+ * query, so that {@link JavacChecker} can skip the tree of a
+ * class which doesn't mention any.
+ */
+final class QueryMentions {
+
+    static final int QUERIES = 1;
+    static final int PANACHE = 1 << 1;
+
+    private static final String[] QUERY_NAMES = {
+            "createQuery", "createSelectionQuery", "createMutationQuery",
+            "NamedQuery", "HQL"
+    };
+    private static final String[] PANACHE_NAMES = {
+            "count", "delete", "update", "exists", "stream", "list", "find"
+    };
+
+    private QueryMentions() {}
+
+    /**
+     * @param charset the encoding of the file, used only if it
+     *                has to be read directly from disk
+     * @return the source code, or null if it can't be read
+     */
+    static String readSource(JavaFileObject file, Charset charset) {
+        try {
+            return file.getCharContent(true).toString();
+        }
+        catch (UnsupportedOperationException e) {
+            //Gradle's wrapper around the file
+            try {
+                URI uri = file.toUri();
+                return "file".equals(uri.getScheme())
+                        ? new String(Files.readAllBytes(Paths.get(uri)), charset)
+                        : null;
+            }
+            catch (Exception f) {
+                return null;
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Which of the names does the given source mention? If it
+     * couldn't be read, assume that it mentions all of them.
+     *
+     * @return a combination of {@link #QUERIES} and {@link #PANACHE}
+     */
+    static int mentions(String source) {
+        if (source == null) {
+            return QUERIES | PANACHE;
+        }
+        int mentions = 0;
+        if (containsAny(source, QUERY_NAMES)) {
+            mentions |= QUERIES;
+        }
+        if (containsAny(source, PANACHE_NAMES)) {
+            mentions |= PANACHE;
+        }
+        return mentions;
+    }
+
+    private static boolean containsAny(String source, String[] names) {
+        for (String name: names) {
+            if (containsIdentifier(source, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does the given name occur as a whole identifier? For
+     * example, {@code HQL} occurs in {@code @HQL}, but not in
+     * {@code @CheckHQL}.
+     */
+    private static boolean containsIdentifier(String source, String name) {
+        int index = source.indexOf(name);
+        while (index >= 0) {
+            int end = index + name.length();
+            if ((index == 0 || !Character.isJavaIdentifierPart(source.charAt(index - 1)))
+                    && (end == source.length() || !Character.isJavaIdentifierPart(source.charAt(end)))) {
+                return true;
+            }
+            index = source.indexOf(name, end);
+        }
+        return false;
+    }
+}
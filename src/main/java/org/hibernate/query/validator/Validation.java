@@ -3,9 +3,10 @@ package org.hibernate.query.validator;
 import org.antlr.v4.runtime.ANTLRErrorListener;
 import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.DefaultErrorStrategy;
-import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import org.hibernate.PropertyNotFoundException;
 import org.hibernate.QueryException;
 import org.hibernate.grammars.hql.HqlLexer;
@@ -17,8 +18,6 @@ import org.hibernate.query.sqm.PathElementException;
 import org.hibernate.query.sqm.TerminalPathException;
 import org.hibernate.type.descriptor.java.spi.JdbcTypeRecommendationException;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Set;
 
 import static java.lang.Character.isJavaIdentifierStart;
@@ -52,7 +51,19 @@ class Validation {
                          MockSessionFactory factory,
                          int errorOffset) {
 //        handler = new Filter(handler, errorOffset);
+        interpret(hql, parse(hql, handler), checkParams,
+                setParameterLabels, setParameterNames,
+                handler, factory, errorOffset);
+    }
 
+    /**
+     * Lex and parse the query, reporting any syntax error. This
+     * doesn't touch the session factory, and so it may be called
+     * from any thread, as long as the handler is thread safe.
+     *
+     * @return the parse tree, or null if something went wrong
+     */
+    static HqlParser.StatementContext parse(String hql, Handler handler) {
         try {
 
             final HqlLexer hqlLexer = HqlParseTreeBuilder.INSTANCE.buildHqlLexer( hql );
@@ -63,9 +74,8 @@ class Validation {
             hqlParser.addErrorListener( handler );
             hqlParser.setErrorHandler( new BailErrorStrategy() );
 
-            HqlParser.StatementContext statementContext;
             try {
-                statementContext = hqlParser.statement();
+                return hqlParser.statement();
             }
             catch ( ParseCancellationException e) {
                 // reset the input token stream and parser state
@@ -76,25 +86,54 @@ class Validation {
                 hqlParser.getInterpreter().setPredictionMode( PredictionMode.LL );
                 hqlParser.setErrorHandler( new DefaultErrorStrategy() );
 
-                statementContext = hqlParser.statement();
+                return hqlParser.statement();
 
             }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Interpret a query which has already been parsed by
+     * {@link #parse}, and check its parameter bindings.
+     */
+    static void interpret(String hql,
+                          HqlParser.StatementContext statementContext,
+                          boolean checkParams,
+                          Set<Integer> setParameterLabels,
+                          Set<String> setParameterNames,
+                          Handler handler,
+                          MockSessionFactory factory,
+                          int errorOffset) {
+        if (statementContext == null) {
+            return;
+        }
+        try {
             if (handler.getErrorCount() == 0) {
-                try {
-                    new SemanticQueryBuilder<>( Object[].class, () -> false, factory )
-                            .visitStatement( statementContext );
-                }
-                catch (JdbcTypeRecommendationException ignored) {
-                    // just squash these for now
-                }
-                catch (QueryException | PathElementException | TerminalPathException | EntityTypeException
-                       | PropertyNotFoundException se) { //TODO is this one really thrown by core? It should not be!
-                    handler.error( -errorOffset+1, -errorOffset + hql.length(), se.getMessage() );
+                String error = factory.interpret( hql, () -> {
+                    try {
+                        new SemanticQueryBuilder<>( Object[].class, () -> false, factory )
+                                .visitStatement( statementContext );
+                    }
+                    catch (JdbcTypeRecommendationException ignored) {
+                        // just squash these for now
+                    }
+                    catch (QueryException | PathElementException | TerminalPathException | EntityTypeException
+                           | PropertyNotFoundException se) { //TODO is this one really thrown by core? It should not be!
+                        return se.getMessage();
+                    }
+                    return null;
+                } );
+                if (error != null) {
+                    handler.error( -errorOffset+1, -errorOffset + hql.length(), error );
                 }
             }
 
             if (checkParams) {
-                checkParameterBinding(hql, setParameterLabels, setParameterNames, handler, errorOffset);
+                checkParameterBinding(statementContext, setParameterLabels, setParameterNames, handler, errorOffset);
             }
         }
         catch (Exception e) {
@@ -102,82 +141,28 @@ class Validation {
         }
     }
 
+    /**
+     * Check the parameters occurring in the parse tree against the
+     * given parameter bindings. When every parameter is bound, this
+     * allocates nothing.
+     */
     private static void checkParameterBinding(
-            String hql,
+            HqlParser.StatementContext statementContext,
             Set<Integer> setParameterLabels,
             Set<String> setParameterNames,
             Handler handler,
             int errorOffset) {
         try {
-            String unsetParams = null;
-            String notSet = null;
-            String parameters = null;
-            int start = -1;
-            int end = -1;
-            List<String> names = new ArrayList<>();
-            List<Integer> labels = new ArrayList<>();
-            final HqlLexer hqlLexer = HqlParseTreeBuilder.INSTANCE.buildHqlLexer( hql );
-            loop:
-            while (true) {
-                Token token = hqlLexer.nextToken();
-                int tokenType = token.getType();
-                switch (tokenType) {
-                    case HqlLexer.EOF:
-                        break loop;
-                    case HqlLexer.QUESTION_MARK:
-                    case HqlLexer.COLON:
-                        Token next = hqlLexer.nextToken();
-                        String text = next.getText();
-                        switch (tokenType) {
-                            case HqlLexer.COLON:
-                                if (!text.isEmpty()
-                                        && isJavaIdentifierStart(text.codePointAt(0))) {
-                                    names.add(text);
-                                    if (setParameterNames.contains(text)) {
-                                        continue;
-                                    }
-                                }
-                                else {
-                                    continue;
-                                }
-                                break;
-                            case HqlLexer.QUESTION_MARK:
-                                if (next.getType() == HqlLexer.INTEGER_LITERAL) {
-                                    int label;
-                                    try {
-                                        label = parseInt(text);
-                                    }
-                                    catch (NumberFormatException nfe) {
-                                        continue;
-                                    }
-                                    labels.add(label);
-                                    if (setParameterLabels.contains(label)) {
-                                        continue;
-                                    }
-                                }
-                                else {
-                                    continue;
-                                }
-                                break;
-                            default:
-                                continue;
-                        }
-                        parameters = unsetParams == null ? "Parameter " : "Parameters ";
-                        notSet = unsetParams == null ? " is not set" : " are not set";
-                        unsetParams = unsetParams == null ? "" : unsetParams + ", ";
-                        unsetParams += token.getText() + text;
-                        if (start == -1)
-                            start = token.getCharPositionInLine(); //TODO: wrong for multiline query strings!
-                        end = token.getCharPositionInLine() + text.length() + 1;
-                        break;
-                }
-            }
-            if (unsetParams != null) {
-                handler.warn(start-errorOffset+1, end-errorOffset, parameters + unsetParams + notSet);
+            UnsetParameters unset =
+                    findUnsetParameters(statementContext, setParameterLabels, setParameterNames, null);
+            if (unset != null) {
+                handler.warn(unset.start-errorOffset+1, unset.end-errorOffset,
+                        (unset.count == 1 ? "Parameter " : "Parameters ")
+                                + unset.names
+                                + (unset.count == 1 ? " is not set" : " are not set"));
             }
 
-            setParameterNames.removeAll(names);
-            setParameterLabels.removeAll(labels);
+            removeOccurringParameters(statementContext, setParameterLabels, setParameterNames);
 
             int count = setParameterNames.size() + setParameterLabels.size();
             if (count > 0) {
@@ -203,6 +188,107 @@ class Validation {
         }
     }
 
+    /**
+     * The parameters which occur in the query, but aren't bound.
+     */
+    private static final class UnsetParameters {
+        final StringBuilder names = new StringBuilder();
+        int count;
+        int start;
+        int end;
+    }
+
+    private static UnsetParameters findUnsetParameters(
+            ParseTree tree,
+            Set<Integer> setParameterLabels,
+            Set<String> setParameterNames,
+            UnsetParameters unset) {
+        if (tree instanceof HqlParser.ParameterContext) {
+            HqlParser.ParameterContext parameter = (HqlParser.ParameterContext) tree;
+            String name = parameterName(parameter);
+            Integer label = parameterLabel(parameter);
+            if (name != null && !setParameterNames.contains(name)
+                    || label != null && !setParameterLabels.contains(label)) {
+                if (unset == null) {
+                    unset = new UnsetParameters();
+                    unset.start = parameter.getStart().getStartIndex();
+                }
+                else {
+                    unset.names.append(", ");
+                }
+                unset.names.append(name == null ? "?" + label : ":" + name);
+                unset.end = parameter.getStop().getStopIndex() + 1;
+                unset.count++;
+            }
+        }
+        else {
+            for (int i = 0; i < tree.getChildCount(); i++) {
+                unset = findUnsetParameters(tree.getChild(i), setParameterLabels, setParameterNames, unset);
+            }
+        }
+        return unset;
+    }
+
+    private static void removeOccurringParameters(
+            ParseTree tree,
+            Set<Integer> setParameterLabels,
+            Set<String> setParameterNames) {
+        if (setParameterLabels.isEmpty() && setParameterNames.isEmpty()) {
+            return;
+        }
+        if (tree instanceof HqlParser.ParameterContext) {
+            HqlParser.ParameterContext parameter = (HqlParser.ParameterContext) tree;
+            String name = parameterName(parameter);
+            if (name != null) {
+                setParameterNames.remove(name);
+            }
+            Integer label = parameterLabel(parameter);
+            if (label != null) {
+                setParameterLabels.remove(label);
+            }
+        }
+        else {
+            for (int i = 0; i < tree.getChildCount(); i++) {
+                removeOccurringParameters(tree.getChild(i), setParameterLabels, setParameterNames);
+            }
+        }
+    }
+
+    /**
+     * @return the name of a named parameter, or null
+     */
+    private static String parameterName(HqlParser.ParameterContext parameter) {
+        if (parameter instanceof HqlParser.NamedParameterContext) {
+            HqlParser.IdentifierContext identifier =
+                    ((HqlParser.NamedParameterContext) parameter).identifier();
+            if (identifier != null) {
+                String name = identifier.getStart().getText();
+                if (!name.isEmpty() && isJavaIdentifierStart(name.codePointAt(0))) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the label of an ordinal parameter, or null
+     */
+    private static Integer parameterLabel(HqlParser.ParameterContext parameter) {
+        if (parameter instanceof HqlParser.PositionalParameterContext) {
+            TerminalNode literal = ((HqlParser.PositionalParameterContext) parameter).INTEGER_LITERAL();
+            if (literal != null) {
+                try {
+                    return parseInt(literal.getText());
+                }
+                catch (NumberFormatException nfe) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
 
 //    private static class Filter implements Handler {
 //        private final Handler delegate;
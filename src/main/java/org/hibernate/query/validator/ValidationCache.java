@@ -0,0 +1,333 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.Version;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A persistent cache of the diagnostics produced by validating
+ * each query, so that a query which hasn't changed since the
+ * last build needn't be parsed and interpreted again.
+ * <p>
+ * An entry is keyed by the text of the query and its parameter
+ * bindings, and records the fingerprint of every entity and
+ * class consulted while the query was validated. It's only
+ * replayed if none of them has changed since. Entries are looked
+ * up by a hash of the key, but the key itself is stored too, and
+ * compared, since two keys might have the same hash.
+ * <p>
+ * The file is append-only. A later entry for the same query
+ * supersedes an earlier one. It's read into memory, rather than
+ * memory-mapped, since on Windows a mapped file can't be replaced
+ * or deleted, and Java 8 has no way to unmap it. Since several
+ * builds may share the cache, it's only read while holding a
+ * shared lock, and only written, or compacted in place, while
+ * holding an exclusive lock. An entry which can't be read, left
+ * by an interrupted build, is dropped, along with any after it,
+ * but the entries before it are kept.
+ */
+class ValidationCache {
+
+    static final String FILE = "validation.cache";
+
+    private static final int MAGIC = 0x48515643; //HQVC
+    private static final int FORMAT = 3;
+
+    private final Path file;
+    private final String version;
+    // null if there was no file
+    private Contents contents;
+
+    private final ByteArrayOutputStream appended = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(appended);
+    private final Map<Long,Integer> appendedPositions = new HashMap<>();
+
+    /**
+     * The entries of the file, as read at some point.
+     */
+    private static final class Contents {
+        final ByteBuffer buffer;
+        // hash of entry key to position of the latest entry in the buffer
+        final Map<Long,Integer> positions = new HashMap<>();
+        int entryCount;
+        // the end of the last entry which could be read,
+        // or -1 if the file wasn't written by this version
+        int end = -1;
+
+        Contents(ByteBuffer buffer, String version) {
+            this.buffer = buffer;
+            try {
+                if (buffer.remaining() >= 8 && buffer.getInt() == MAGIC
+                        && buffer.getInt() == FORMAT
+                        && version.equals(EntityModel.readString(buffer))) {
+                    end = buffer.position();
+                    while (buffer.hasRemaining()) {
+                        int position = buffer.position();
+                        long hash = buffer.getLong();
+                        skipEntry(buffer);
+                        positions.put(hash, position);
+                        entryCount++;
+                        end = buffer.position();
+                    }
+                }
+            }
+            catch (RuntimeException e) {
+                //truncated by an interrupted build
+            }
+        }
+
+        /**
+         * Can entries be appended to the file?
+         */
+        boolean isAppendable() {
+            return end == buffer.limit();
+        }
+    }
+
+    private ValidationCache(Path file) {
+        this.file = file;
+        //entries written by a different version of Hibernate can't be trusted
+        version = Version.getVersionString();
+    }
+
+    static ValidationCache open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ValidationCache cache = new ValidationCache(directory.resolve(FILE));
+        cache.read();
+        return cache;
+    }
+
+    private void read() throws IOException {
+        if (Files.isRegularFile(file)) {
+            try (FileChannel channel = FileChannel.open(file, READ);
+                 FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+                contents = new Contents(readAll(channel), version);
+            }
+        }
+    }
+
+    private static ByteBuffer readAll(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The key of the entry for the given query and parameter
+     * bindings.
+     */
+    static String key(String hql, boolean checkParams,
+                      Set<Integer> setParameterLabels,
+                      Set<String> setParameterNames,
+                      int errorOffset) {
+        StringBuilder key = new StringBuilder(hql)
+                .append('\u0000').append(checkParams)
+                .append('\u0000').append(errorOffset);
+        if (checkParams) {
+            key.append('\u0000').append(new TreeSet<>(setParameterLabels))
+                    .append('\u0000').append(new TreeSet<>(setParameterNames));
+        }
+        return key.toString();
+    }
+
+    private static long hash(String key) {
+        return EntityModel.hash(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replay the diagnostics produced last time the query was
+     * validated, if nothing it depends on has changed since.
+     *
+     * @return true if the query needn't be validated again
+     */
+    boolean replay(String key, Validation.Handler handler, ProcessorSessionFactory factory) {
+        if (contents == null) {
+            return false;
+        }
+        Integer position = contents.positions.get(hash(key));
+        if (position == null) {
+            return false;
+        }
+        ByteBuffer entry = contents.buffer.duplicate();
+        entry.position(position + 8);
+        if (!key.equals(EntityModel.readString(entry))) {
+            //a different query with the same hash
+            return false;
+        }
+        int nameCount = entry.getInt();
+        for (int i = 0; i < nameCount; i++) {
+            String name = EntityModel.readString(entry);
+            if (factory.fingerprint(name) != entry.getLong()) {
+                return false;
+            }
+        }
+        int diagnosticCount = entry.getInt();
+        for (int i = 0; i < diagnosticCount; i++) {
+            boolean error = entry.get() != 0;
+            int start = entry.getInt();
+            int end = entry.getInt();
+            String message = EntityModel.readString(entry);
+            if (error) {
+                handler.error(start, end, message);
+            }
+            else {
+                handler.warn(start, end, message);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remember the diagnostics produced by validating a query.
+     * Syntax errors can't be replayed, but they're cheap to
+     * detect anyway, so such queries aren't remembered.
+     *
+     * @param consultedNames the entities and classes consulted
+     *                       while validating the query
+     */
+    void store(String key, Set<String> consultedNames,
+               DeferredHandler handler,
+               ProcessorSessionFactory factory) {
+        if (handler.hasSyntaxError()) {
+            return;
+        }
+        try {
+            long hash = hash(key);
+            appendedPositions.put(hash, out.size());
+            out.writeLong(hash);
+            EntityModel.writeString(out, key);
+            out.writeInt(consultedNames.size());
+            for (String name: consultedNames) {
+                EntityModel.writeString(out, name);
+                out.writeLong(factory.fingerprint(name));
+            }
+            List<DeferredHandler.Diagnostic> diagnostics = handler.getDiagnostics();
+            out.writeInt(diagnostics.size());
+            for (DeferredHandler.Diagnostic diagnostic: diagnostics) {
+                out.writeByte(diagnostic.error ? 1 : 0);
+                out.writeInt(diagnostic.start);
+                out.writeInt(diagnostic.end);
+                EntityModel.writeString(out, diagnostic.message);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the new entries to the end of the file, or, if
+     * most of the entries in the file have been superseded, or
+     * if the file couldn't be read, rewrite the whole file.
+     */
+    void close() throws IOException {
+        out.flush();
+        if (appended.size() > 0) {
+            try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+                 FileLock lock = channel.lock()) {
+                //another build may have written to it since
+                Contents current = new Contents(readAll(channel), version);
+                if (channel.size() == 0) {
+                    write(channel, 0, header());
+                    write(channel, channel.size(), appended.toByteArray());
+                }
+                else if (!current.isAppendable() || isMostlySuperseded(current)) {
+                    compact(channel, current);
+                }
+                else {
+                    write(channel, channel.size(), appended.toByteArray());
+                }
+            }
+            appended.reset();
+            appendedPositions.clear();
+        }
+    }
+
+    private boolean isMostlySuperseded(Contents current) {
+        int entryCount = current.entryCount + appendedPositions.size();
+        return entryCount > 1000
+            && entryCount > 2 * (current.positions.size() + appendedPositions.size() + 1);
+    }
+
+    /**
+     * Rewrite the file in place, keeping only the latest entry
+     * for each key, and the entries which could be read.
+     */
+    private void compact(FileChannel channel, Contents current) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(header());
+        if (current.end >= 0) {
+            for (Map.Entry<Long,Integer> entry: current.positions.entrySet()) {
+                if (!appendedPositions.containsKey(entry.getKey())) {
+                    copyEntry(current.buffer, entry.getValue(), bytes);
+                }
+            }
+        }
+        appended.writeTo(bytes);
+        channel.truncate(0);
+        write(channel, 0, bytes.toByteArray());
+    }
+
+    private static void write(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void copyEntry(ByteBuffer buffer, int position, ByteArrayOutputStream bytes) {
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(position + 8);
+        skipEntry(entry);
+        int end = entry.position();
+        entry.position(position);
+        byte[] copy = new byte[end - position];
+        entry.get(copy);
+        bytes.write(copy, 0, copy.length);
+    }
+
+    private static void skipEntry(ByteBuffer buffer) {
+        EntityModel.readString(buffer);
+        int nameCount = buffer.getInt();
+        for (int i = 0; i < nameCount; i++) {
+            EntityModel.readString(buffer);
+            buffer.getLong();
+        }
+        int diagnosticCount = buffer.getInt();
+        for (int i = 0; i < diagnosticCount; i++) {
+            buffer.get();
+            buffer.getInt();
+            buffer.getInt();
+            EntityModel.readString(buffer);
+        }
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT);
+        EntityModel.writeString(header, version);
+        header.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,267 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.grammars.hql.HqlParser;
+
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * The queries found while scanning the compilation units of a
+ * processing round. At the end of the round, they're lexed and
+ * parsed in parallel, and then interpreted on the compiler
+ * thread, since the session factory asks the compiler about
+ * entities, and compiler symbols aren't thread safe. Finally,
+ * their diagnostics are reported in the order in which the
+ * queries were found.
+ */
+class ValidationQueue {
+
+    // the first queries of a build are parsed while the
+    // parser is still cold, unless it was warmed up, so
+    // they're timed separately from the rest
+    private static final int COLD_QUERIES = 100;
+
+    private static final class Query {
+        final DeferredHandler handler;
+        final String hql;
+        final boolean checkParams;
+        final Set<Integer> setParameterLabels;
+        final Set<String> setParameterNames;
+        final Supplier<? extends MockSessionFactory> factory;
+        final int errorOffset;
+        HqlParser.StatementContext statement;
+        long parseNanos;
+
+        Query(DeferredHandler handler, String hql, boolean checkParams,
+              Set<Integer> setParameterLabels, Set<String> setParameterNames,
+              Supplier<? extends MockSessionFactory> factory, int errorOffset) {
+            this.handler = handler;
+            this.hql = hql;
+            this.checkParams = checkParams;
+            this.setParameterLabels = setParameterLabels;
+            this.setParameterNames = setParameterNames;
+            this.factory = factory;
+            this.errorOffset = errorOffset;
+        }
+
+        void parse() {
+            long start = System.nanoTime();
+            statement = Validation.parse(hql, handler);
+            parseNanos = System.nanoTime() - start;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final boolean ownPool;
+    private final List<Query> queries = new ArrayList<>();
+
+    // null unless a warm-up was requested
+    private final BackgroundWarmup warmup;
+
+    // null unless statistics were requested
+    private final Messager statistics;
+    private int parsedCount;
+    private int replayedCount;
+    private long parseNanos;
+    private long parseWallNanos;
+    private long coldParseNanos;
+
+    /**
+     * @param processingEnv its {@value HQLProcessor#PARALLELISM}
+     *                      option determines how many threads are
+     *                      used to parse queries, and its
+     *                      {@value HQLProcessor#PREWARM} option
+     *                      whether the engine is warmed up in
+     *                      the background, starting now
+     */
+    ValidationQueue(ProcessingEnvironment processingEnv) {
+        int threads = parallelism(processingEnv);
+        if (threads <= 0) {
+            pool = ForkJoinPool.commonPool();
+            ownPool = false;
+        }
+        else if (threads == 1) {
+            pool = null;
+            ownPool = false;
+        }
+        else {
+            pool = new ForkJoinPool(threads);
+            ownPool = true;
+        }
+        statistics = "true".equals(processingEnv.getOptions().get(HQLProcessor.STATISTICS))
+                ? processingEnv.getMessager()
+                : null;
+        warmup = "true".equals(processingEnv.getOptions().get(HQLProcessor.PREWARM))
+                ? BackgroundWarmup.start()
+                : null;
+    }
+
+    /**
+     * @return the number of threads specified, or 0 for the
+     *         common pool
+     */
+    private static int parallelism(ProcessingEnvironment processingEnv) {
+        String parallelism = processingEnv.getOptions().get(HQLProcessor.PARALLELISM);
+        if (parallelism == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(parallelism.trim());
+        }
+        catch (NumberFormatException e) {
+            processingEnv.getMessager()
+                    .printMessage(Diagnostic.Kind.WARNING,
+                            "Ignoring " + HQLProcessor.PARALLELISM + "=" + parallelism
+                                    + ", which isn't a number of threads");
+            return 0;
+        }
+    }
+
+    /**
+     * Add a query to be validated at the end of the round. Like
+     * {@link Validation#validate}, this clears the given sets of
+     * parameters if {@code checkParams} is true.
+     */
+    void add(DeferredHandler handler, String hql, boolean checkParams,
+             Set<Integer> setParameterLabels,
+             Set<String> setParameterNames,
+             Supplier<? extends MockSessionFactory> factory,
+             int errorOffset) {
+        queries.add(new Query(handler, hql, checkParams,
+                new HashSet<>(setParameterLabels), new HashSet<>(setParameterNames),
+                factory, errorOffset));
+        if (checkParams) {
+            setParameterLabels.clear();
+            setParameterNames.clear();
+        }
+    }
+
+    /**
+     * Add diagnostics for a query which couldn't be validated,
+     * to be reported along with the others.
+     */
+    void add(DeferredHandler handler) {
+        add(handler, null, false, new HashSet<>(), new HashSet<>(), null, 0);
+    }
+
+    /**
+     * Validate every query, and report the diagnostics.
+     *
+     * @param cache a {@link ValidationCache}, only for javac
+     */
+    void validate(ValidationCache cache) {
+        if (warmup != null && !queries.isEmpty()) {
+            //create the session factory while
+            //the parser is still warming up
+            for (Query query: queries) {
+                if (query.factory != null) {
+                    query.factory.get();
+                    break;
+                }
+            }
+            warmup.await();
+        }
+        List<Query> toParse = new ArrayList<>();
+        String[] keys = new String[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            if (query.hql != null) {
+                if (cache == null) {
+                    toParse.add(query);
+                }
+                else {
+                    keys[i] = ValidationCache.key(query.hql, query.checkParams,
+                            query.setParameterLabels, query.setParameterNames,
+                            query.errorOffset);
+                    if (cache.replay(keys[i], query.handler,
+                            (ProcessorSessionFactory) query.factory.get())) {
+                        replayedCount++;
+                    }
+                    else {
+                        toParse.add(query);
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        if (pool == null || toParse.size() < 2) {
+            toParse.forEach(Query::parse);
+        }
+        else {
+            pool.submit(() -> toParse.parallelStream().forEach(Query::parse)).join();
+        }
+        parseWallNanos += System.nanoTime() - start;
+        for (Query query: toParse) {
+            if (parsedCount < COLD_QUERIES) {
+                coldParseNanos += query.parseNanos;
+            }
+            parseNanos += query.parseNanos;
+            parsedCount++;
+        }
+
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            if (query.statement != null) {
+                MockSessionFactory factory = query.factory.get();
+                if (cache != null) {
+                    ((ProcessorSessionFactory) factory).startRecording();
+                }
+                Validation.interpret(query.hql, query.statement, query.checkParams,
+                        query.setParameterLabels, query.setParameterNames,
+                        query.handler, factory, query.errorOffset);
+                if (cache != null) {
+                    ProcessorSessionFactory processorFactory = (ProcessorSessionFactory) factory;
+                    cache.store(keys[i], processorFactory.stopRecording(),
+                            query.handler, processorFactory);
+                }
+                query.statement = null;
+            }
+        }
+
+        for (Query query: queries) {
+            query.handler.report();
+        }
+        queries.clear();
+    }
+
+    /**
+     * @param factory the session factory used to interpret the
+     *                queries, or null if there wasn't one
+     */
+    void close(MockSessionFactory factory) {
+        if (ownPool) {
+            pool.shutdown();
+        }
+        if (statistics != null) {
+            statistics.printMessage(Diagnostic.Kind.NOTE,
+                    "Hibernate Query Validator parsed " + parsedCount + " queries in "
+                            + ParserWarmup.millis(parseWallNanos) + " ms"
+                            + (parsedCount == 0 ? "" : " (" + describeLatency() + ")")
+                            + (replayedCount == 0 ? "" : ", and replayed " + replayedCount + " from the cache")
+                            + (factory == null ? "" : "; " + factory.describeInterpretations())
+                            + (warmup == null ? "" : "; " + warmup.describe()));
+        }
+    }
+
+    /**
+     * The mean time taken to parse the first queries of the
+     * build, and the rest.
+     */
+    private String describeLatency() {
+        int coldCount = Math.min(parsedCount, COLD_QUERIES);
+        String description = ParserWarmup.millis(coldParseNanos / coldCount)
+                + " ms per query for the first " + coldCount;
+        int warmCount = parsedCount - coldCount;
+        return warmCount == 0 ? description
+                : description + ", " + ParserWarmup.millis((parseNanos - coldParseNanos) / warmCount)
+                        + " ms per query for the rest";
+    }
+}
@@ -0,0 +1,81 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.type.Type;
+import org.junit.Test;
+
+import jakarta.persistence.AccessType;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link EntityHierarchy} relates each entity to
+ * its subtypes, and not to its supertypes, whatever the order in
+ * which the persisters are created. Like {@link MockSessionFactoryTest},
+ * it lives in the package of the processor, since the persisters
+ * aren't public API.
+ */
+public class EntityHierarchyTest {
+
+    public abstract static class HierarchySessionFactory extends MockSessionFactory {}
+
+    /**
+     * A persister of an entity with the given supertypes, and
+     * no attributes.
+     */
+    public abstract static class Persister extends MockEntityPersister {
+        private final List<String> supertypes;
+
+        public Persister(String entityName, List<String> supertypes, MockSessionFactory factory) {
+            super(entityName, AccessType.FIELD, factory);
+            this.supertypes = supertypes;
+        }
+
+        @Override
+        boolean isSubclassPersister(MockEntityPersister entityPersister) {
+            return ((Persister) entityPersister).supertypes.contains(getEntityName());
+        }
+
+        @Override
+        Type createPropertyType(String propertyPath) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testSubclassEntityNames() {
+        MockSessionFactory factory = Mocker.nullary(HierarchySessionFactory.class).get();
+        Mocker<Persister> persisters = Mocker.variadic(Persister.class);
+        Persister kitten = persisters.make("Kitten", asList("Cat", "Animal"), factory);
+        Persister cat = persisters.make("Cat", singletonList("Animal"), factory);
+        Persister animal = persisters.make("Animal", emptyList(), factory);
+        Persister dog = persisters.make("Dog", singletonList("Animal"), factory);
+        //subtypes both before and after their supertypes
+        for (Persister persister: asList(kitten, cat, animal, dog)) {
+            factory.getEntityHierarchy().add(persister);
+        }
+
+        assertEquals(names("Animal", "Cat", "Dog", "Kitten"), animal.getSubclassEntityNames());
+        assertEquals(names("Cat", "Kitten"), cat.getSubclassEntityNames());
+        assertEquals(names("Kitten"), kitten.getSubclassEntityNames());
+        assertEquals(names("Dog"), dog.getSubclassEntityNames());
+
+        assertTrue(animal.isSubclassEntityName("Kitten"));
+        assertFalse(cat.isSubclassEntityName("Animal"));
+        assertFalse(cat.isSubclassEntityName("Dog"));
+
+        assertEquals("Animal", kitten.getRootEntityName());
+        assertEquals("Animal", dog.getRootEntityName());
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(asList(names));
+    }
+}
@@ -0,0 +1,44 @@
+package org.hibernate.query.validator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that strings survive a round trip through the binary
+ * format shared by the entity model and the validation cache,
+ * however long they are. Like {@link MockSessionFactoryTest}, it
+ * lives in the package of the processor, since the format isn't
+ * public API.
+ */
+public class EntityModelTest {
+
+    @Test
+    public void testStringRoundTrip() throws IOException {
+        StringBuilder longMessage = new StringBuilder();
+        while (longMessage.length() < 40_000) {
+            longMessage.append("Could not resolve attribute 'nom' of 'Person' ");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        EntityModel.writeString(out, "short");
+        EntityModel.writeString(out, null);
+        EntityModel.writeString(out, longMessage.toString());
+        EntityModel.writeString(out, "été");
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals("short", EntityModel.readString(buffer));
+        assertNull(EntityModel.readString(buffer));
+        assertEquals(longMessage.toString(), EntityModel.readString(buffer));
+        assertEquals("été", EntityModel.readString(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+}
@@ -0,0 +1,179 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.CustomEntityDirtinessStrategy;
+import org.hibernate.boot.model.naming.ImplicitNamingStrategy;
+import org.hibernate.boot.model.naming.PhysicalNamingStrategy;
+import org.hibernate.boot.spi.MappingDefaults;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.hibernate.engine.query.spi.NativeQueryInterpreter;
+import org.hibernate.id.factory.IdentifierGeneratorFactory;
+import org.hibernate.metamodel.spi.RuntimeMetamodelsImplementor;
+import org.hibernate.proxy.EntityNotFoundDelegate;
+import org.hibernate.query.hql.HqlTranslator;
+import org.hibernate.query.named.NamedObjectRepository;
+import org.hibernate.query.spi.QueryInterpretationCache;
+import org.hibernate.query.sqm.NodeBuilder;
+import org.hibernate.query.sqm.sql.SqmTranslatorFactory;
+import org.hibernate.stat.spi.StatisticsImplementor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that, once warmed up, validating a query constructs no
+ * new session factory services, and that each factory has its own
+ * {@link org.hibernate.type.spi.TypeConfiguration}. Unlike the other tests, it lives
+ * in the package of the processor, since it needs to subclass
+ * {@link MockSessionFactory} and call {@link Validation} directly,
+ * neither of which is public API.
+ */
+public class MockSessionFactoryTest {
+
+    /**
+     * Records every service which Hibernate obtains from the
+     * factory, noting those it hadn't obtained before.
+     */
+    public abstract static class RecordingSessionFactory extends MockSessionFactory {
+        // not initialized here, since the constructor
+        // of MockSessionFactory calls some accessors
+        private Set<Object> services;
+        final List<String> created = new ArrayList<>();
+        final List<String> called = new ArrayList<>();
+        boolean steady;
+
+        private <T> T record(String accessor, T service) {
+            if (services == null) {
+                services = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            if (steady) {
+                called.add(accessor);
+            }
+            if (services.add(service) && steady) {
+                created.add(accessor + ": " + service.getClass().getName());
+            }
+            return service;
+        }
+
+        @Override
+        public CacheImplementor getCache() {
+            return record("getCache", super.getCache());
+        }
+
+        @Override
+        public StatisticsImplementor getStatistics() {
+            return record("getStatistics", super.getStatistics());
+        }
+
+        @Override
+        public IdentifierGeneratorFactory getIdentifierGeneratorFactory() {
+            return record("getIdentifierGeneratorFactory", super.getIdentifierGeneratorFactory());
+        }
+
+        @Override
+        public NodeBuilder getCriteriaBuilder() {
+            return record("getCriteriaBuilder", super.getCriteriaBuilder());
+        }
+
+        @Override
+        public HqlTranslator getHqlTranslator() {
+            return record("getHqlTranslator", super.getHqlTranslator());
+        }
+
+        @Override
+        public SqmTranslatorFactory getSqmTranslatorFactory() {
+            return record("getSqmTranslatorFactory", super.getSqmTranslatorFactory());
+        }
+
+        @Override
+        public NamedObjectRepository getNamedObjectRepository() {
+            return record("getNamedObjectRepository", super.getNamedObjectRepository());
+        }
+
+        @Override
+        public NativeQueryInterpreter getNativeQueryInterpreter() {
+            return record("getNativeQueryInterpreter", super.getNativeQueryInterpreter());
+        }
+
+        @Override
+        public QueryInterpretationCache getInterpretationCache() {
+            return record("getInterpretationCache", super.getInterpretationCache());
+        }
+
+        @Override
+        public MappingDefaults getMappingDefaults() {
+            return record("getMappingDefaults", super.getMappingDefaults());
+        }
+
+        @Override
+        public PhysicalNamingStrategy getPhysicalNamingStrategy() {
+            return record("getPhysicalNamingStrategy", super.getPhysicalNamingStrategy());
+        }
+
+        @Override
+        public ImplicitNamingStrategy getImplicitNamingStrategy() {
+            return record("getImplicitNamingStrategy", super.getImplicitNamingStrategy());
+        }
+
+        @Override
+        public RuntimeMetamodelsImplementor getRuntimeMetamodels() {
+            return record("getRuntimeMetamodels", super.getRuntimeMetamodels());
+        }
+
+        @Override
+        public EntityNotFoundDelegate getEntityNotFoundDelegate() {
+            return record("getEntityNotFoundDelegate", super.getEntityNotFoundDelegate());
+        }
+
+        @Override
+        public CustomEntityDirtinessStrategy getCustomEntityDirtinessStrategy() {
+            return record("getCustomEntityDirtinessStrategy", super.getCustomEntityDirtinessStrategy());
+        }
+    }
+
+    @Test
+    public void testNoServicesCreatedInSteadyState() {
+        RecordingSessionFactory factory = Mocker.nullary(RecordingSessionFactory.class).get();
+
+        validate(factory, "select 1");
+        validate(factory, "select upper('hello'), 2 where 1 = :x");
+
+        //different queries, so that they're interpreted again
+        factory.steady = true;
+        validate(factory, "select 2");
+        validate(factory, "select lower('world'), 3 where 2 = :y");
+
+        assertTrue(factory.called.contains("getCriteriaBuilder"));
+        assertEquals(Collections.emptyList(), factory.created);
+        //these need services the mock registry doesn't
+        //provide, so a validation mustn't ask for them
+        assertTrue(Collections.disjoint(factory.called,
+                Arrays.asList("getCache", "getStatistics", "getIdentifierGeneratorFactory")));
+    }
+
+    @Test
+    public void testTypeConfigurationScopedToFactory() {
+        RecordingSessionFactory factory = Mocker.nullary(RecordingSessionFactory.class).get();
+        RecordingSessionFactory other = Mocker.nullary(RecordingSessionFactory.class).get();
+
+        assertNotSame(factory.getTypeConfiguration(), other.getTypeConfiguration());
+        assertSame(factory, factory.getTypeConfiguration().getSessionFactory());
+        assertSame(other, other.getTypeConfiguration().getSessionFactory());
+    }
+
+    private static void validate(MockSessionFactory factory, String hql) {
+        DeferredHandler handler = new DeferredHandler(null);
+        Validation.validate(hql, false, new HashSet<>(), new HashSet<>(), handler, factory);
+        assertEquals(0, handler.getErrorCount());
+    }
+}
@@ -0,0 +1,69 @@
+package org.hibernate.query.validator;
+
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hibernate.query.validator.QueryMentions.PANACHE;
+import static org.hibernate.query.validator.QueryMentions.QUERIES;
+import static org.hibernate.query.validator.QueryMentions.mentions;
+import static org.hibernate.query.validator.QueryMentions.readSource;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the scan which decides whether the tree of a class
+ * needs to be walked at all. Like {@link MockSessionFactoryTest},
+ * it lives in the package of the processor, since the scan isn't
+ * public API.
+ */
+public class QueryMentionsTest {
+
+    @Test
+    public void testNoQueries() {
+        assertEquals(0, mentions("@CheckHQL public class Dao {\n"
+                + "    String query() { return \"from Person\"; }\n"
+                + "}\n"));
+    }
+
+    @Test
+    public void testQueries() {
+        assertEquals(QUERIES, mentions("@CheckHQL public class Dao {\n"
+                + "    void query(EntityManager em) { em.createQuery(\"from Person\"); }\n"
+                + "}\n"));
+        assertEquals(QUERIES, mentions("@CheckHQL public interface Dao {\n"
+                + "    @HQL(\"from Person\") List<Person> people();\n"
+                + "}\n"));
+        //not a whole identifier
+        assertEquals(0, mentions("@CheckHQL public class Dao {\n"
+                + "    void myCreateQuery() {}\n"
+                + "}\n"));
+    }
+
+    @Test
+    public void testPanacheQueries() {
+        assertEquals(PANACHE, mentions("@CheckHQL public class PersonRepository {\n"
+                + "    Person byName(String name) { return find(\"name\", name).firstResult(); }\n"
+                + "}\n"));
+    }
+
+    @Test
+    public void testUnreadableSource() {
+        assertEquals(QUERIES | PANACHE, mentions(null));
+    }
+
+    @Test
+    public void testSourceEncoding() throws Exception {
+        //as Latin-1, the é is part of the identifier éHQL,
+        //but as UTF-8 it's malformed, and HQL stands alone
+        Path file = Files.createTempFile("Dao", ".java");
+        Files.write(file, "class Dao { String éHQL; }".getBytes(StandardCharsets.ISO_8859_1));
+        JavaFileObject wrapper = new SimpleJavaFileObject(file.toUri(), JavaFileObject.Kind.SOURCE) {};
+
+        assertEquals(0, mentions(readSource(wrapper, StandardCharsets.ISO_8859_1)));
+        assertEquals(QUERIES, mentions(readSource(wrapper, StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,61 @@
+package org.hibernate.query.validator;
+
+import org.hibernate.query.validator.test.TestCompiler;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the cost per query of validating with a session
+ * factory created just for the query, as the processors once
+ * did, and with one session factory shared by the compilation.
+ * Run with {@code -Dbenchmark.queries=1000} for more queries, or
+ * with any {@code benchmark.*} property to see the times taken.
+ * Like {@link MockSessionFactoryTest}, it lives in the package
+ * of the processor, since it needs to call {@link Validation}
+ * directly.
+ */
+public class SessionFactorySharingBenchmarkTest {
+
+    private static final int QUERIES = Integer.getInteger("benchmark.queries", 100);
+
+    public abstract static class BenchmarkSessionFactory extends MockSessionFactory {}
+
+    @Test
+    public void testSharedSessionFactory() {
+        Supplier<BenchmarkSessionFactory> factories = Mocker.nullary(BenchmarkSessionFactory.class);
+        //so that neither gets the benefit of loading the classes
+        validate(factories.get(), query(-1));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            validate(factories.get(), query(i));
+        }
+        long perQueryNanos = System.nanoTime() - start;
+
+        //different queries, so that none are remembered
+        BenchmarkSessionFactory factory = factories.get();
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            validate(factory, query(QUERIES + i));
+        }
+        long sharedNanos = System.nanoTime() - start;
+
+        TestCompiler.printBenchmark("Validated " + QUERIES + " queries: "
+                + perQueryNanos / 1_000 / QUERIES + " us per query with a session factory per query, "
+                + sharedNanos / 1_000 / QUERIES + " us per query with a shared session factory");
+    }
+
+    private static String query(int i) {
+        return "select upper('hello" + i + "'), " + i + " where " + i + " = :x";
+    }
+
+    private static void validate(MockSessionFactory factory, String hql) {
+        DeferredHandler handler = new DeferredHandler(null);
+        Validation.validate(hql, false, new HashSet<>(), new HashSet<>(), handler, factory);
+        assertEquals(0, handler.getErrorCount());
+    }
+}
@@ -0,0 +1,59 @@
+package org.hibernate.query.validator.test;
+
+import org.hibernate.query.validator.HQLProcessor;
+import org.junit.Test;
+
+import java.nio.file.Path;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the cost of reporting the diagnostics of many
+ * queries belonging to one class. Run with {@code
+ * -Dbenchmark.repetitions=3} to see the time taken.
+ */
+public class ErrorReporterBenchmarkTest {
+
+    private static final int QUERIES = 500;
+    private static final int REPETITIONS = Integer.getInteger("benchmark.repetitions", 3);
+
+    @Test
+    public void testManyQueriesInOneClass() throws Exception {
+        Path source = TestCompiler.sourceDirectory();
+        Path entity = TestCompiler.write(source, "Person",
+                "@Entity public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        StringBuilder dao = new StringBuilder();
+        dao.append("@CheckHQL public class PersonDao {\n")
+                .append("    void queries() {\n");
+        for (int i = 0; i < QUERIES; i++) {
+            //every query has an unset parameter
+            dao.append("        createQuery(\"from Person p where p.name = :name").append(i)
+                    .append("\").getResultList();\n");
+        }
+        dao.append("    }\n")
+                .append("    private static Query createQuery(String hql) { return new Query(); }\n")
+                .append("    static class Query { void getResultList() {} }\n")
+                .append("}\n");
+        Path file = TestCompiler.write(source, "PersonDao", dao.toString());
+
+        long nanos = Long.MAX_VALUE;
+        String errors = null;
+        for (int i = 0; i < REPETITIONS; i++) {
+            long start = System.nanoTime();
+            errors = TestCompiler.compile(new HQLProcessor(),
+                    asList("-Xmaxwarns", String.valueOf(QUERIES + 10)),
+                    asList(entity, file));
+            nanos = Math.min(nanos, System.nanoTime() - start);
+        }
+        TestCompiler.printBenchmark("Reported " + QUERIES + " warnings in one class in "
+                + nanos / 1_000_000 + " ms");
+
+        assertTrue(errors.contains("PersonDao.java:6: warning: Parameter :name0 is not set"));
+        assertTrue(errors.contains("PersonDao.java:" + (QUERIES + 5) + ": warning: Parameter :name"
+                + (QUERIES - 1) + " is not set"));
+    }
+}
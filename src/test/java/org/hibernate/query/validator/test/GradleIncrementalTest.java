@@ -0,0 +1,131 @@
+package org.hibernate.query.validator.test;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class GradleIncrementalTest {
+
+    private final Path TEST_LIBS = Paths.get("test-runtime-libs");
+
+    @Test
+    public void testIncrementalCompilation() throws Exception {
+        //needs the processor as built by Gradle
+        assumeTrue(System.getProperty("gradle") != null);
+
+        Path project = project("-Ahibernate.query.validator.incremental=true");
+        Path source = project.resolve("src/main/java/test");
+        writePerson(source, "name");
+        writeDao(source, "PersonDao", "from Person p where p.name = :name");
+        writeDao(source, "OtherDao", "from Person p where p.name = :nickName");
+
+        BuildResult result = build(project).build();
+        assertTrue(result.getOutput().contains("OtherDao.java:9: warning: Parameter :nickName is not set"));
+
+        //only the changed DAO is recompiled and validated
+        writeDao(source, "PersonDao", "from Person p where p.name = :fullName");
+        result = build(project).build();
+        assertFalse(result.getOutput().contains("Full recompilation is required"));
+        assertTrue(result.getOutput().contains("PersonDao.java:9: warning: Parameter :fullName is not set"));
+        assertFalse(result.getOutput().contains("OtherDao.java"));
+    }
+
+    @Test
+    public void testEntityChangeWithoutIncrementalOption() throws Exception {
+        //needs the processor as built by Gradle
+        assumeTrue(System.getProperty("gradle") != null);
+
+        Path project = project();
+        Path source = project.resolve("src/main/java/test");
+        writePerson(source, "name");
+        writeDao(source, "PersonDao", "from Person p where p.name = :name");
+
+        BuildResult result = build(project).build();
+        assertFalse(result.getOutput().contains("PersonDao.java"));
+
+        //the DAO doesn't change, but it's validated again
+        writePerson(source, "fullName");
+        result = build(project).buildAndFail();
+        assertTrue(result.getOutput().contains("PersonDao.java:9: error: Could not resolve attribute 'name' of 'Person'"));
+    }
+
+    private Path project(String... compilerArgs) throws IOException {
+        Path project = Files.createTempDirectory("validator-test-gradle");
+        Files.write(project.resolve("settings.gradle"),
+                "rootProject.name = 'incremental'\n".getBytes());
+        String processorPath = processorPath();
+        String args = Stream.of(compilerArgs)
+                .map(arg -> "'" + arg + "'")
+                .collect(Collectors.joining(", "));
+        Files.write(project.resolve("build.gradle"),
+                ("plugins { id 'java' }\n"
+                        + "dependencies {\n"
+                        + "    compileOnly files(" + processorPath + ")\n"
+                        + "    annotationProcessor files(" + processorPath + ")\n"
+                        + "}\n"
+                        + "tasks.withType(JavaCompile) {\n"
+                        + "    options.compilerArgs += [" + args + "]\n"
+                        + "}\n").getBytes());
+        Files.createDirectories(project.resolve("src/main/java/test"));
+        return project;
+    }
+
+    private static void writePerson(Path source, String attribute) throws IOException {
+        Files.write(source.resolve("Person.java"),
+                ("package test;\n"
+                        + "import jakarta.persistence.*;\n"
+                        + "@Entity public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String " + attribute + ";\n"
+                        + "}\n").getBytes());
+    }
+
+    private static void writeDao(Path source, String name, String query) throws IOException {
+        Files.write(source.resolve(name + ".java"),
+                ("package test;\n"
+                        + "import jakarta.persistence.EntityManager;\n"
+                        + "import org.hibernate.annotations.processing.CheckHQL;\n"
+                        + "@CheckHQL\n"
+                        + "public class " + name + " {\n"
+                        + "    void query(EntityManager em) {\n"
+                        + "        em.createQuery(\"from Person\")\n"
+                        + "                .getResultList();\n"
+                        + "        em.createQuery(\"" + query + "\")\n"
+                        + "                .setParameter(\"name\", \"gavin\")\n"
+                        + "                .getResultList();\n"
+                        + "    }\n"
+                        + "}\n").getBytes());
+    }
+
+    private static GradleRunner build(Path project) {
+        return GradleRunner.create()
+                .withProjectDir(project.toFile())
+                .withArguments("compileJava", "--info")
+                .forwardOutput();
+    }
+
+    private String processorPath() throws IOException {
+        try (Stream<Path> libs = Files.list(TEST_LIBS)) {
+            return Stream.concat(
+                    Stream.of(Paths.get("build/classes/groovy/main"),
+                            Paths.get("build/resources/main"),
+                            Paths.get("build/generated/mocks")),
+                    //leave out the Panache processor, which isn't incremental
+                    libs.filter(lib -> !lib.toString().contains("/ecj-")
+                            && !lib.toString().contains("/quarkus-")))
+                    .map(path -> "'" + path.toAbsolutePath() + "'")
+                    .collect(Collectors.joining(", "));
+        }
+    }
+}
@@ -1,19 +1,39 @@
 package org.hibernate.query.validator.test;
 
 import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
+import org.hibernate.query.validator.HQLProcessor;
+import org.jboss.jandex.Index;
+import org.jboss.jandex.IndexWriter;
+import org.jboss.jandex.Indexer;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static javax.tools.ToolProvider.getSystemJavaCompiler;
 import static org.hibernate.query.validator.HQLProcessor.forceEclipseForTesting;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -81,6 +101,7 @@ public class HQLValidationTest {
         assertTrue(errors.contains("BadQueries.java:62: error: Could not resolve treat target type 'Employe'"));
 
         assertPanacheErrors(errors, "PanacheBadPerson", 22);
+        //its only queries are Panache calls, but it's still checked
         assertPanacheErrors(errors, "PanacheBadPersonRepository", 10);
     }
 
@@ -195,10 +216,391 @@ public class HQLValidationTest {
         forceEclipseForTesting = false;
     }
 
+    @Test
+    public void testJavacWithEntityModel() throws Exception {
+        Path entities = Files.createTempDirectory("validator-test-model");
+        compileWithJavac(entities, null,
+                singletonList("-Ahibernate.query.validator.exportModel=true"),
+                sources("test"));
+        //only the model, without the classes of the entities
+        Path model = Files.createTempDirectory("validator-test-model-only");
+        Path resource = Paths.get("META-INF/hibernate-query-validator/entities.bin");
+        Files.createDirectories(model.resolve(resource).getParent());
+        Files.copy(entities.resolve(resource), model.resolve(resource));
+        //and a class named by "select new", which isn't an entity
+        compileWithJavac(model, null,
+                asList("-proc:none", "-implicit:none", "-sourcepath", "src/test/source"),
+                singletonList("src/test/source/test/Pair.java"));
+        assertTrue(Files.exists(model.resolve("test/Pair.class")));
+        assertFalse(Files.exists(model.resolve("test/Person.class")));
+
+        //the entities now come from the model alone
+        List<String> queries = new ArrayList<>();
+        queries.add("src/test/source/test/package-info.java");
+        queries.add("src/test/source/test/GoodQueries.java");
+        queries.add("src/test/source/test/BadQueries.java");
+        String errors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                model.toString(), emptyList(), queries);
+
+        assertFalse(errors.contains("GoodQueries.java:"));
+
+        assertTrue(errors.contains("BadQueries.java:19: error: Could not resolve root entity 'People'"));
+        assertTrue(errors.contains("BadQueries.java:20: error: Could not resolve attribute 'firstName' of 'Person'"));
+        assertTrue(errors.contains("BadQueries.java:21: error: Could not resolve attribute 'addr' of 'Person'"));
+        assertTrue(errors.contains("BadQueries.java:22: error: Could not resolve attribute 'town' of 'Address'"));
+        assertTrue(errors.contains("BadQueries.java:23: error: Could not resolve attribute 'name' of 'Address'"));
+        assertTrue(errors.contains("BadQueries.java:24: error: Could not resolve attribute 'type' of 'Country'"));
+        assertTrue(errors.contains("BadQueries.java:26: error: Could not interpret attribute 'length' of basic-valued path"));
+        assertTrue(errors.contains("BadQueries.java:27: error: Terminal path has no attribute 'length'"));
+        assertTrue(errors.contains("BadQueries.java:62: error: Could not resolve treat target type 'Employe'"));
+    }
+
+    @Test
+    public void testJavacWithEntityModelWithoutCheckHQL() throws Exception {
+        //an entity module usually has nothing to check
+        Path source = TestCompiler.sourceDirectory();
+        Path entity = TestCompiler.write(source, "Person",
+                "@Entity(name = \"Human\") public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        Path entities = Files.createTempDirectory("validator-test-model");
+        compileWithJavac(entities, null,
+                singletonList("-Ahibernate.query.validator.exportModel=true"),
+                singletonList(entity.toString()));
+        assertTrue(Files.exists(entities.resolve("META-INF/hibernate-query-validator/entities.bin")));
+
+        Path dao = TestCompiler.write(source, "PersonDao",
+                "@CheckHQL public class PersonDao {\n"
+                        + "    void queries() {\n"
+                        + "        createQuery(\"from Human h where h.name = 'gavin'\");\n"
+                        + "        createQuery(\"from Human h where h.nom = 'gavin'\");\n"
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+        String errors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                entities.toString(), emptyList(), singletonList(dao.toString()));
+        assertFalse(errors.contains("PersonDao.java:6:"));
+        assertTrue(errors.contains("PersonDao.java:7: error: Could not resolve attribute 'nom' of 'Human'"));
+    }
+
+    @Test
+    public void testJavacSymbolTableWithPrecompiledEntity() throws Exception {
+        //an entity whose name isn't its class name
+        Path source = TestCompiler.sourceDirectory();
+        Path entity = TestCompiler.write(source, "Person",
+                "@Entity(name = \"Human\") public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        Path entities = Files.createTempDirectory("validator-test-entities");
+        compileWithJavac(entities, null, singletonList("-proc:none"), singletonList(entity.toString()));
+
+        Path dao = TestCompiler.write(source, "PersonDao",
+                "@CheckHQL public class PersonDao {\n"
+                        + "    void queries() {\n"
+                        + "        createQuery(\"from Human h where h.name = 'gavin'\");\n"
+                        + "        createQuery(\"from Human h where h.nom = 'gavin'\");\n"
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+        String javacErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                entities.toString(),
+                singletonList("-Ahibernate.query.validator.sessionFactory=javac"),
+                singletonList(dao.toString()));
+        String processorErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                entities.toString(),
+                singletonList("-Ahibernate.query.validator.sessionFactory=processor"),
+                singletonList(dao.toString()));
+
+        assertFalse(javacErrors.contains("warning:"));
+        assertFalse(javacErrors.contains("PersonDao.java:6:"));
+        assertTrue(javacErrors.contains("PersonDao.java:7: error: Could not resolve attribute 'nom' of 'Human'"));
+        assertEquals(processorErrors, javacErrors);
+    }
+
+    @Test
+    public void testJavacWithJandexIndex() throws Exception {
+        //an entity which can only be found via the index
+        Path source = TestCompiler.sourceDirectory();
+        Path entity = TestCompiler.write(source, "Person",
+                "@Entity(name = \"Human\") public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        Path entities = Files.createTempDirectory("validator-test-entities");
+        compileWithJavac(entities, null, singletonList("-proc:none"), singletonList(entity.toString()));
+        Path jar = Files.createTempDirectory("validator-test-jars").resolve("entities.jar");
+        Path indexedJar = jar.resolveSibling("indexed-entities.jar");
+        writeJar(jar, entities, false);
+        writeJar(indexedJar, entities, true);
+
+        Path dao = TestCompiler.write(source, "PersonDao",
+                "@CheckHQL public class PersonDao {\n"
+                        + "    void queries() {\n"
+                        + "        createQuery(\"from Human h where h.name = 'gavin'\");\n"
+                        + "        createQuery(\"from Human h where h.nom = 'gavin'\");\n"
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+        List<String> options = singletonList("-Ahibernate.query.validator.jandex=only");
+
+        String errors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                indexedJar.toString(), options, singletonList(dao.toString()));
+        assertFalse(errors.contains("PersonDao.java:6:"));
+        assertTrue(errors.contains("PersonDao.java:7: error: Could not resolve attribute 'nom' of 'Human'"));
+
+        for (String sessionFactory: asList("javac", "processor")) {
+            List<String> factoryOptions = asList("-Ahibernate.query.validator.jandex=only",
+                    "-Ahibernate.query.validator.sessionFactory=" + sessionFactory);
+            assertEquals(errors, compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                    indexedJar.toString(), factoryOptions, singletonList(dao.toString())));
+
+            //without the index, the entity isn't found
+            String unindexedErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                    jar.toString(), factoryOptions, singletonList(dao.toString()));
+            assertTrue(unindexedErrors.contains("PersonDao.java:6:"));
+        }
+
+        //an index in a directory works the same way
+        Files.createDirectories(entities.resolve("META-INF"));
+        try (OutputStream out = Files.newOutputStream(entities.resolve("META-INF/jandex.idx"))) {
+            new IndexWriter(out).write(index(entities));
+        }
+        assertEquals(errors, compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                entities.toString(), options, singletonList(dao.toString())));
+    }
+
+    @Test
+    public void testJavacWithValidationCache() throws Exception {
+        Path cache = Files.createTempDirectory("validator-test-cache");
+        List<String> options = singletonList("-Ahibernate.query.validator.cache=" + cache);
+        String errors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, options, sources("test"));
+        Path file = cache.resolve("validation.cache");
+        assertTrue(Files.exists(file));
+        assertTrue(errors.contains("BadQueries.java:20: error: Could not resolve attribute 'firstName' of 'Person'"));
+        long size = Files.size(file);
+
+        //the second time, the diagnostics come from the cache
+        String cachedErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, options, sources("test"));
+        assertEquals(errors, cachedErrors);
+        assertEquals(size, Files.size(file));
+
+        //as if a build was interrupted while writing the last entry
+        byte[] truncated = Arrays.copyOf(Files.readAllBytes(file), (int) size - 3);
+        Files.write(file, truncated);
+        List<String> statisticsOptions = new ArrayList<>(options);
+        statisticsOptions.add("-Ahibernate.query.validator.statistics=true");
+        String recoveredErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, statisticsOptions, sources("test"));
+        //the other entries were kept, and replayed
+        Matcher statistics = Pattern.compile("parsed (\\d+) queries.*and replayed (\\d+) from the cache")
+                .matcher(recoveredErrors);
+        assertTrue(statistics.find());
+        assertTrue(Integer.parseInt(statistics.group(1)) < Integer.parseInt(statistics.group(2)));
+        assertEquals(errors, recoveredErrors.replaceAll("Note: Hibernate Query Validator parsed .*\\R", ""));
+
+        //and the file is whole again, so nothing needs interpreting
+        String finalErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, statisticsOptions, sources("test"));
+        assertTrue(finalErrors.contains("interpreted 0 queries"));
+        assertEquals(errors, finalErrors.replaceAll("Note: Hibernate Query Validator parsed .*\\R", ""));
+    }
+
+    @Test
+    public void testInheritanceHierarchy() throws Exception {
+        Path source = TestCompiler.sourceDirectory();
+        Path animal = TestCompiler.write(source, "Animal",
+                "@Entity public class Animal {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        Path cat = TestCompiler.write(source, "Cat",
+                "@Entity public class Cat extends Animal {\n"
+                        + "    int lives;\n"
+                        + "}\n");
+        Path dog = TestCompiler.write(source, "Dog",
+                "@Entity public class Dog extends Animal {\n"
+                        + "    boolean barks;\n"
+                        + "}\n");
+        //an attribute of a subtype is found only if the
+        //subtype is known to be a subtype, and not if it's
+        //declared by some other subtype of the supertype
+        Path dao = TestCompiler.write(source, "AnimalDao",
+                "@CheckHQL public class AnimalDao {\n"
+                        + "    void queries() {\n"
+                        + "        createQuery(\"from Cat c where c.lives = 9 and c.name = 'tom'\");\n"
+                        + "        createQuery(\"from Dog d where d.barks = true\");\n"
+                        + "        createQuery(\"from Animal a where a.lives = 9\");\n"
+                        + "        createQuery(\"from Animal a where treat(a as Cat).lives = 9\");\n"
+                        + "        createQuery(\"from Cat c where c.barks = true\");\n"
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+        String errors = TestCompiler.compile(new HQLProcessor(), emptyList(), asList(animal, cat, dog, dao));
+        assertTrue(errors.contains("AnimalDao.java:10: error: Could not resolve attribute 'barks' of 'Cat'"));
+        assertTrue(errors.contains("1 error"));
+    }
+
+    @Test
+    public void testJavacWithPrewarm() throws Exception {
+        List<String> options = asList("-Ahibernate.query.validator.prewarm=true",
+                "-Ahibernate.query.validator.statistics=true");
+        String errors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, options, sources("test"));
+        assertTrue(errors.contains("BadQueries.java:9: error: no viable alternative at input '*do'"));
+        assertTrue(errors.contains("BadQueries.java:20: error: Could not resolve attribute 'firstName' of 'Person'"));
+        assertTrue(errors.contains("background warm-up took"));
+        assertTrue(errors.contains("ms per query for the first"));
+
+        //without it, the corpus isn't parsed on the compiler thread
+        String coldErrors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, singletonList("-Ahibernate.query.validator.statistics=true"), sources("test"));
+        assertFalse(coldErrors.contains("warm-up"));
+        assertTrue(coldErrors.contains("ms per query for the first"));
+    }
+
+    @Test
+    public void testJavacWithBadParallelism() throws Exception {
+        String errors = compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, singletonList("-Ahibernate.query.validator.parallelism=auto"),
+                sources("test"));
+        assertTrue(errors.contains("warning: Ignoring hibernate.query.validator.parallelism=auto"));
+        assertTrue(errors.contains("BadQueries.java:20: error: Could not resolve attribute 'firstName' of 'Person'"));
+        assertFalse(errors.contains("NumberFormatException"));
+    }
+
+    @Test
+    public void testConcurrentJavac() throws Exception {
+        List<String> sources = sources("test");
+        String errors = compileWithSharedProcessor(sources);
+        assertTrue(errors.contains("BadQueries.java:20: error: Could not resolve attribute 'firstName' of 'Person'"));
+
+        //the processors share the classes loaded by this class
+        //loader, as they do in a Gradle daemon, but each
+        //compilation has its own entity model
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            List<Future<String>> modelResults = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int model = i;
+                results.add(executor.submit(() -> compileWithSharedProcessor(sources)));
+                modelResults.add(executor.submit(() -> compileModel(model)));
+            }
+            for (Future<String> result: results) {
+                assertEquals(errors, result.get());
+            }
+            for (int i = 0; i < 4; i++) {
+                String modelErrors = modelResults.get(i).get();
+                for (int j = 0; j < 4; j++) {
+                    String name = "Could not resolve attribute 'name" + j + "' of 'Person'";
+                    String city = "Could not resolve attribute 'city" + j + "' of 'Address'";
+                    assertEquals(modelErrors, i != j, modelErrors.contains(name));
+                    assertEquals(modelErrors, i != j, modelErrors.contains(city));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Compile entities named like those of every other model,
+     * but whose attributes are named for the given model, along
+     * with queries referring to the attributes of every model.
+     */
+    private String compileModel(int model) throws IOException {
+        Path source = TestCompiler.sourceDirectory();
+        Path address = TestCompiler.write(source, "Address",
+                "@Entity public class Address {\n"
+                        + "    @Id long id;\n"
+                        + "    String city" + model + ";\n"
+                        + "}\n");
+        Path person = TestCompiler.write(source, "Person",
+                "@Entity public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name" + model + ";\n"
+                        + "    @ManyToOne Address address;\n"
+                        + "}\n");
+        StringBuilder queries = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            queries.append("        createQuery(\"from Person p where p.name").append(i)
+                    .append(" = :name\");\n");
+            queries.append("        createQuery(\"from Person p where p.address.city").append(i)
+                    .append(" = :city\");\n");
+        }
+        Path dao = TestCompiler.write(source, "PersonDao",
+                "@CheckHQL public class PersonDao {\n"
+                        + "    void queries() {\n"
+                        + queries
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+        return TestCompiler.compile(new HQLProcessor(), emptyList(), asList(address, person, dao));
+    }
+
+    /**
+     * Write a jar containing the classes in the given directory,
+     * along with a Jandex index of them, if requested.
+     */
+    private static void writeJar(Path jar, Path classes, boolean indexed) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(classes)) {
+            for (Path file: files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+            if (indexed) {
+                out.putNextEntry(new JarEntry("META-INF/jandex.idx"));
+                new IndexWriter(out).write(index(classes));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static Index index(Path classes) throws IOException {
+        Indexer indexer = new Indexer();
+        try (Stream<Path> files = Files.walk(classes)) {
+            for (Path file: files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList())) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    indexer.index(in);
+                }
+            }
+        }
+        return indexer.complete();
+    }
+
+    private String compileWithSharedProcessor(List<String> sources) throws IOException {
+        return TestCompiler.compile(new HQLProcessor(), emptyList(),
+                sources.stream().map(Paths::get).collect(Collectors.toList()));
+    }
+
     private String compileWithJavac(String... packages) throws IOException {
-        Path tempDir = Files.createTempDirectory("validator-test-out");
+        return compileWithJavac(Files.createTempDirectory("validator-test-out"),
+                null, emptyList(), sources(packages));
+    }
 
+    private List<String> sources(String... packages) throws IOException {
         List<String> files = new ArrayList<>();
+        for (String pack: packages) {
+            Files.list(Paths.get("src/test/source")
+                        .resolve(pack.replace('.', '/')))
+                    .map(Path::toString)
+                    .filter(s -> s.endsWith(".java"))
+                    .forEach(files::add);
+        }
+        return files;
+    }
+
+    private String compileWithJavac(Path tempDir, String extraClasspath,
+                                    List<String> options, List<String> sources)
+            throws IOException {
+        List<String> files = new ArrayList<>(options);
 
 //        files.add("-verbose");
 
@@ -210,28 +612,24 @@ public class HQLValidationTest {
 
         if (System.getProperty("gradle")!=null) {
             cp.append("build/libs/query-validator-2.0-SNAPSHOT.jar");
-            cp.append(":build/classes/java/main:build/classes/groovy/main");
+            cp.append(":build/classes/java/main:build/classes/groovy/main:build/generated/mocks");
         }
         else {
             cp.append("out/production/query-validator");
             cp.append(":build/classes/java/main");
         }
 
-        Files.list(TEST_LIBS)
-                .map(Path::toString)
-                .filter(s -> !s.contains("/ecj-") && ! s.contains("/org.eclipse.jdt.core_"))
+        TestCompiler.libraries()
                 .forEach(s -> cp.append(":").append(s));
 
+        if (extraClasspath!=null) {
+            cp.append(":").append(extraClasspath);
+        }
+
         System.out.println(cp);
         files.add(cp.toString());
 
-        for (String pack: packages) {
-            Files.list(Paths.get("src/test/source")
-                        .resolve(pack.replace('.', '/')))
-                    .map(Path::toString)
-                    .filter(s -> s.endsWith(".java"))
-                    .forEach(files::add);
-        }
+        files.addAll(sources);
 
         String[] args = files.toArray(new String[0]);
         ByteArrayOutputStream err = new ByteArrayOutputStream();
@@ -267,7 +665,7 @@ public class HQLValidationTest {
             }
             else {
                 cp.append("build/libs/query-validator-2.0-SNAPSHOT.jar");
-                cp.append(":build/classes/java/main:build/classes/groovy/main");
+                cp.append(":build/classes/java/main:build/classes/groovy/main:build/generated/mocks");
             }
         }
         else {
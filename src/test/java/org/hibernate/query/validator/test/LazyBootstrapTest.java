@@ -0,0 +1,140 @@
+package org.hibernate.query.validator.test;
+
+import org.junit.Test;
+
+import javax.annotation.processing.Processor;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the processor doesn't load Hibernate, ANTLR, or
+ * ByteBuddy in a module without {@code @CheckHQL}, by running
+ * it in a class loader of its own, which records every class
+ * it loads.
+ */
+public class LazyBootstrapTest {
+
+    @Test
+    public void testModuleWithoutCheckHQL() throws Exception {
+        Path source = TestCompiler.sourceDirectory();
+        Path entity = TestCompiler.write(source, "Person",
+                "@Entity public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        Path dao = TestCompiler.write(source, "PersonDao",
+                "public class PersonDao {\n"
+                        + "    void queries() {\n"
+                        + "        createQuery(\"from Person p where p.name = :name\");\n"
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+
+        RecordingClassLoader loader = new RecordingClassLoader();
+        String errors = compile(loader, entity, dao);
+
+        assertFalse(errors.contains("Hibernate Query Validator"));
+        assertEquals(Collections.emptyList(), loader.loadedLibraryClasses());
+    }
+
+    @Test
+    public void testModuleWithCheckHQL() throws Exception {
+        Path source = TestCompiler.sourceDirectory();
+        Path entity = TestCompiler.write(source, "Person",
+                "@Entity public class Person {\n"
+                        + "    @Id long id;\n"
+                        + "    String name;\n"
+                        + "}\n");
+        Path dao = TestCompiler.write(source, "PersonDao",
+                "@CheckHQL public class PersonDao {\n"
+                        + "    void queries() {\n"
+                        + "        createQuery(\"from Person p where p.nom = :name\");\n"
+                        + "    }\n"
+                        + "    private static void createQuery(String hql) {}\n"
+                        + "}\n");
+
+        RecordingClassLoader loader = new RecordingClassLoader();
+        String errors = compile(loader, entity, dao);
+
+        assertTrue(errors.contains("Could not resolve attribute 'nom' of 'Person'"));
+        assertFalse(loader.loadedLibraryClasses().isEmpty());
+    }
+
+    private static String compile(ClassLoader loader, Path... sources) throws Exception {
+        Processor processor = (Processor)
+                Class.forName("org.hibernate.query.validator.HQLProcessor", true, loader)
+                        .getDeclaredConstructor().newInstance();
+        return TestCompiler.compile(processor, emptyList(), asList(sources));
+    }
+
+    /**
+     * Loads the processor and its dependencies from the class
+     * path of the tests, rather than delegating to the parent,
+     * and records the names of the classes it loads.
+     */
+    private static class RecordingClassLoader extends URLClassLoader {
+
+        private final List<String> loaded = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingClassLoader() throws MalformedURLException {
+            super(classPath(), LazyBootstrapTest.class.getClassLoader());
+        }
+
+        private static URL[] classPath() throws MalformedURLException {
+            List<URL> urls = new ArrayList<>();
+            for (String entry: System.getProperty("java.class.path").split(File.pathSeparator)) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+            return urls.toArray(new URL[0]);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!isIsolated(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    clazz = findClass(name);
+                    loaded.add(name);
+                }
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
+            }
+        }
+
+        private static boolean isIsolated(String name) {
+            return name.startsWith("org.hibernate.")
+                || name.startsWith("org.antlr.")
+                || name.startsWith("net.bytebuddy.");
+        }
+
+        /**
+         * @return the classes which were loaded, other than the
+         *         classes of the processor itself
+         */
+        List<String> loadedLibraryClasses() {
+            synchronized (loaded) {
+                return loaded.stream()
+                        .filter(name -> !name.startsWith("org.hibernate.query.validator."))
+                        .collect(Collectors.toList());
+            }
+        }
+    }
+}
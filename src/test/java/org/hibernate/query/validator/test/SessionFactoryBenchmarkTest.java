@@ -0,0 +1,97 @@
+package org.hibernate.query.validator.test;
+
+import org.hibernate.query.validator.HQLProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the session factory which uses the language model
+ * with the one which uses the javac symbol table, on a model
+ * with many entities. Run with {@code -Dbenchmark.entities=1000}
+ * for a larger model, or with any {@code benchmark.*} property
+ * to see the times taken.
+ */
+public class SessionFactoryBenchmarkTest {
+
+    private static final int ENTITIES = Integer.getInteger("benchmark.entities", 50);
+    private static final int QUERIES_PER_ENTITY = 10;
+    private static final int REPETITIONS = Integer.getInteger("benchmark.repetitions", 2);
+
+    @Test
+    public void testSessionFactories() throws Exception {
+        List<Path> sources = generateModel();
+
+        String processorErrors = null;
+        String javacErrors = null;
+        long processorNanos = Long.MAX_VALUE;
+        long javacNanos = Long.MAX_VALUE;
+        //alternate, so that neither gets the benefit of a warmer JVM
+        for (int i = 0; i < REPETITIONS; i++) {
+            long start = System.nanoTime();
+            processorErrors = compile(sources, "processor");
+            processorNanos = Math.min(processorNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            javacErrors = compile(sources, "javac");
+            javacNanos = Math.min(javacNanos, System.nanoTime() - start);
+        }
+        TestCompiler.printBenchmark("Validated " + ENTITIES * QUERIES_PER_ENTITY + " queries against "
+                + ENTITIES + " entities: " + processorNanos / 1_000_000 + " ms with the language model, "
+                + javacNanos / 1_000_000 + " ms with the symbol table");
+
+        assertTrue(processorErrors.contains("Could not resolve attribute 'missing' of 'Entity0'"));
+        assertEquals(processorErrors, javacErrors);
+    }
+
+    private List<Path> generateModel() throws IOException {
+        Path source = TestCompiler.sourceDirectory();
+        List<Path> sources = new ArrayList<>();
+        sources.add(TestCompiler.write(source, "Address",
+                "@Embeddable public class Address {\n"
+                        + "    String street;\n"
+                        + "    String city;\n"
+                        + "}\n"));
+        for (int i = 0; i < ENTITIES; i++) {
+            StringBuilder entity = new StringBuilder();
+            entity.append("@Entity public class Entity").append(i).append(" {\n")
+                    .append("    @Id long id;\n")
+                    .append("    Address address;\n")
+                    .append("    @ManyToOne Entity").append(i == 0 ? 0 : i - 1).append(" parent;\n");
+            for (int j = 0; j < 10; j++) {
+                entity.append("    String name").append(j).append(";\n");
+            }
+            entity.append("}\n");
+            sources.add(TestCompiler.write(source, "Entity" + i, entity.toString()));
+
+            StringBuilder dao = new StringBuilder();
+            dao.append("@CheckHQL public class Dao").append(i).append(" {\n")
+                    .append("    void queries() {\n");
+            for (int j = 0; j < QUERIES_PER_ENTITY - 1; j++) {
+                dao.append("        createQuery(\"select e.name").append(j)
+                        .append(", e.parent.name").append(9 - j)
+                        .append(", e.address.city from Entity").append(i)
+                        .append(" e where e.id = ").append(j).append("\");\n");
+            }
+            dao.append("        createQuery(\"from Entity").append(i).append(" e where e.missing = 1\");\n")
+                    .append("    }\n")
+                    .append("    private static void createQuery(String hql) {}\n")
+                    .append("}\n");
+            sources.add(TestCompiler.write(source, "Dao" + i, dao.toString()));
+        }
+        return sources;
+    }
+
+    private static String compile(List<Path> sources, String sessionFactory) throws IOException {
+        return TestCompiler.compile(new HQLProcessor(),
+                asList("-Ahibernate.query.validator.jandex=false",
+                        "-Ahibernate.query.validator.sessionFactory=" + sessionFactory),
+                sources);
+    }
+}
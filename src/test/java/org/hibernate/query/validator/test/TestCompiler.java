@@ -0,0 +1,111 @@
+package org.hibernate.query.validator.test;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Collections.singletonList;
+import static javax.tools.ToolProvider.getSystemJavaCompiler;
+
+/**
+ * Compiles generated sources in package {@code model} with an
+ * in-process {@code javac}, against the libraries copied to
+ * {@code test-runtime-libs}.
+ */
+public final class TestCompiler {
+
+    private static final Path TEST_LIBS = Paths.get("test-runtime-libs");
+
+    private TestCompiler() {}
+
+    /**
+     * @return the libraries needed to compile the test sources
+     *         with {@code javac}, that is, all but ECJ
+     */
+    static List<String> libraries() throws IOException {
+        try (Stream<Path> libs = Files.list(TEST_LIBS)) {
+            return libs.map(Path::toString)
+                    .filter(s -> !s.contains("/ecj-") && !s.contains("/org.eclipse.jdt.core_"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return a new, empty, directory for the sources of package
+     *         {@code model}
+     */
+    static Path sourceDirectory() throws IOException {
+        Path source = Files.createTempDirectory("validator-test-source").resolve("model");
+        Files.createDirectories(source);
+        return source;
+    }
+
+    /**
+     * Write a class of package {@code model}, which imports the
+     * JPA annotations and {@code @CheckHQL}.
+     */
+    static Path write(Path directory, String name, String body) throws IOException {
+        Path file = directory.resolve(name + ".java");
+        Files.write(file, ("package model;\n"
+                + "import jakarta.persistence.*;\n"
+                + "import org.hibernate.annotations.processing.CheckHQL;\n"
+                + body).getBytes());
+        return file;
+    }
+
+    /**
+     * Compile the given sources with the given processor, and
+     * with the {@linkplain #libraries() libraries}, followed by
+     * the given directories or jars, on the class path.
+     *
+     * @return the diagnostics
+     */
+    static String compile(Processor processor, List<String> options,
+                          List<Path> sources, String... classpath)
+            throws IOException {
+        List<String> entries = new ArrayList<>(libraries());
+        for (String entry: classpath) {
+            entries.add(entry);
+        }
+        List<String> arguments = new ArrayList<>(options);
+        arguments.add("-d");
+        arguments.add(Files.createTempDirectory("validator-test-out").toString());
+        arguments.add("-classpath");
+        arguments.add(String.join(File.pathSeparator, entries));
+        StringWriter err = new StringWriter();
+        JavaCompiler compiler = getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager =
+                     compiler.getStandardFileManager(null, null, null)) {
+            JavaCompiler.CompilationTask task =
+                    compiler.getTask(err, fileManager, null, arguments,
+                            null, fileManager.getJavaFileObjectsFromFiles(
+                                    sources.stream().map(Path::toFile).collect(Collectors.toList())));
+            task.setProcessors(singletonList(processor));
+            task.call();
+        }
+        return err.toString();
+    }
+
+    /**
+     * Print the result of a benchmark, only if one of the {@code
+     * benchmark.*} system properties was specified.
+     */
+    public static void printBenchmark(String result) {
+        for (String property: System.getProperties().stringPropertyNames()) {
+            if (property.startsWith("benchmark.")) {
+                System.out.println(result);
+                return;
+            }
+        }
+    }
+}